@@ -0,0 +1,370 @@
+package com.ass1.bench;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ass1.proxy.Proxy;
+import com.ass1.proxy.ProxyInterface;
+import com.ass1.server.InputQuery;
+import com.ass1.server.Response;
+import com.ass1.server.Server;
+import com.ass1.server.ServerConfig;
+import com.ass1.server.ServerInterface;
+import com.ass1.server.ServerNames;
+
+/**
+ * Runs the registry, the server zones and the proxy in one JVM for each configuration in a matrix,
+ * drives them with the queries of the client input file, and writes a table comparing throughput,
+ * turnaround times and queue depths per zone.
+ *
+ * Options, each taking a comma separated list of values to combine:
+ * --cache, --zones, --workers, --replicas, --delay, --routing and --latency-mode.
+ * --queries limits the amount of queries per run, and --output sets the file the table is written to.
+ *
+ * The harness is also a regression gate: --save-baseline writes the throughput and turnaround times of each
+ * configuration to a file, and --baseline compares a run with such a file, exiting with status 1 if the throughput
+ * of a configuration dropped or its p50/p99 turnaround time grew by more than --tolerance percent (default 20).
+ */
+public class EndToEndHarness {
+    // Interval in ms between samples of the queue lengths
+    private static final long QUEUE_SAMPLE_INTERVAL = 50;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        List<String> cacheModes = Arrays.asList(options.getOrDefault("--cache", "naive,server").split(","));
+        List<String> zoneCounts = Arrays.asList(options.getOrDefault("--zones", "5").split(","));
+        List<String> workerCounts = Arrays.asList(options.getOrDefault("--workers", "1").split(","));
+        List<String> replicaCounts = Arrays.asList(options.getOrDefault("--replicas", "1").split(","));
+        List<String> delays = Arrays.asList(options.getOrDefault("--delay", "20,50").split(","));
+        List<String> routingStrategies = Arrays.asList(options.getOrDefault("--routing", "nearest,local").split(","));
+        List<String> latencyModes = Arrays.asList(options.getOrDefault("--latency-mode", "timer").split(","));
+        int queryLimit = Integer.parseInt(options.getOrDefault("--queries", "1000"));
+        String outputFile = options.getOrDefault("--output", Paths.get("target", "e2e-results.txt").toString());
+        String baselineFile = options.get("--baseline");
+        String savedBaselineFile = options.get("--save-baseline");
+        double tolerance = Double.parseDouble(options.getOrDefault("--tolerance", "20")) / 100;
+
+        List<InputQuery> queries = InputQuery.loadBundled();
+        queries = queries.subList(0, Math.min(queryLimit, queries.size()));
+
+        // Create or get the registry at the default port, as the proxy and clients expect
+        Registry registry;
+        try {
+            registry = LocateRegistry.createRegistry(1099);
+        } catch (Exception e) {
+            registry = LocateRegistry.getRegistry();
+        }
+        Path logDirectory = Files.createTempDirectory("e2e-server-logs");
+
+        List<RunResult> results = new ArrayList<>();
+        for (String cacheMode : cacheModes) {
+            for (String zoneCount : zoneCounts) {
+                for (String workerCount : workerCounts) {
+                    for (String replicaCount : replicaCounts) {
+                        for (String delay : delays) {
+                            for (String routingStrategy : routingStrategies) {
+                                for (String latencyMode : latencyModes) {
+                                    ServerConfig config = new ServerConfig();
+                                    config.setCacheMode(cacheMode);
+                                    config.setZoneCount(Integer.parseInt(zoneCount));
+                                    config.setWorkerCount(Integer.parseInt(workerCount));
+                                    config.setReplicaCount(Integer.parseInt(replicaCount));
+                                    config.setDelay(Integer.parseInt(delay));
+                                    config.setSleepingLatency("sleep".equals(latencyMode));
+                                    config.setLogDirectory(logDirectory.toString());
+
+                                    String name = String.format("cache=%s zones=%s workers=%s replicas=%s delay=%s routing=%s latency=%s",
+                                        cacheMode, zoneCount, workerCount, replicaCount, delay, routingStrategy, latencyMode);
+                                    System.out.println("Running " + name);
+                                    results.add(run(registry, name, config, routingStrategy, queries));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        writeTable(results, outputFile);
+        if (savedBaselineFile != null) {
+            saveBaseline(results, savedBaselineFile);
+        }
+        if (baselineFile != null && !compareWithBaseline(results, baselineFile, tolerance)) {
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Starts the zones and the proxy for a configuration, sends the queries with the configured delay between them,
+     * and shuts everything down again
+     */
+    private static RunResult run(Registry registry, String name, ServerConfig config, String routingStrategy,
+            List<InputQuery> queries) throws Exception {
+        Server[] servers = Server.startZones(registry, config);
+        Proxy proxy = Proxy.start(registry, routingStrategy);
+
+        ProxyInterface proxyStub = (ProxyInterface) registry.lookup("Proxy");
+        Map<String, ServerInterface> serverStubs = new HashMap<>();
+        for (String boundName : registry.list()) {
+            if (ServerNames.parseZone(boundName) > 0) {
+                serverStubs.put(boundName, (ServerInterface) registry.lookup(boundName));
+            }
+        }
+
+        int zoneCount = config.getZoneCount();
+        RunResult result = new RunResult(name, zoneCount);
+
+        // Sample the queue length of each zone, summed over its replicas, while the queries run
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> {
+            int[] queueLengths = new int[zoneCount + 1];
+            for (Map.Entry<String, ServerInterface> entry : serverStubs.entrySet()) {
+                try {
+                    queueLengths[ServerNames.parseZone(entry.getKey())] += entry.getValue().getQueueLength();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+            for (int zone = 1; zone <= zoneCount; zone++) {
+                result.addQueueSample(zone, queueLengths[zone]);
+            }
+        }, 0, QUEUE_SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+
+        ExecutorService clients = Executors.newCachedThreadPool();
+        List<Future<?>> pending = new ArrayList<>();
+        long startTime = System.currentTimeMillis();
+
+        for (InputQuery query : queries) {
+            ServerInterface server = serverStubs.get(proxyStub.getAvailableServerName(query.getZone(), query.getKey()));
+
+            pending.add(clients.submit(() -> {
+                long queryStart = System.currentTimeMillis();
+                try {
+                    Response response = server.executeRequest(query.getMethod(), query.getArgs(), query.getZone(), -1);
+                    if (response.isRejected()) {
+                        result.rejected.incrementAndGet();
+                    } else {
+                        result.addTurnaroundTime(System.currentTimeMillis() - queryStart);
+                    }
+                } catch (Exception e) {
+                    result.failed.incrementAndGet();
+                }
+            }));
+            Thread.sleep(config.getDelay());
+        }
+        for (Future<?> future : pending) {
+            future.get();
+        }
+        result.elapsedTime = System.currentTimeMillis() - startTime;
+        for (ServerInterface server : serverStubs.values()) {
+            result.addCacheMetrics(server.getMetrics());
+        }
+
+        sampler.shutdownNow();
+        clients.shutdownNow();
+        proxy.shutdown();
+        Server.shutdownZones(servers);
+        return result;
+    }
+
+    /**
+     * Writes the comparison table of all runs to standard output and to a file
+     */
+    private static void writeTable(List<RunResult> results, String outputFile) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int zoneCount = results.stream().mapToInt(result -> result.zoneCount).max().orElse(0);
+        sb.append(String.format("%-85s %10s %8s %8s %8s %8s %8s", "configuration", "queries/s", "p50 ms", "p99 ms", "hit %", "rejected", "failed"));
+        for (int zone = 1; zone <= zoneCount; zone++) {
+            sb.append(String.format(" %11s", "z" + zone + " avg/max"));
+        }
+        sb.append('\n');
+
+        for (RunResult result : results) {
+            sb.append(String.format("%-85s %10.1f %8d %8d %8.1f %8d %8d", result.name, result.getThroughput(),
+                result.getPercentile(50), result.getPercentile(99), result.getCacheHitPercentage(), result.rejected.get(), result.failed.get()));
+            for (int zone = 1; zone <= zoneCount; zone++) {
+                sb.append(String.format(" %11s", zone > result.zoneCount ? "-"
+                    : String.format("%.1f/%d", result.getAverageQueueLength(zone), result.getMaxQueueLength(zone))));
+            }
+            sb.append('\n');
+        }
+
+        System.out.println(sb);
+        Path outputPath = Paths.get(outputFile);
+        if (outputPath.getParent() != null) {
+            Files.createDirectories(outputPath.getParent());
+        }
+        try (PrintWriter writer = new PrintWriter(new FileWriter(outputFile))) {
+            writer.print(sb);
+        }
+        System.out.println("Results written to " + outputFile);
+    }
+
+    /**
+     * Writes the throughput and turnaround times of each run to a baseline file, one configuration per line
+     */
+    private static void saveBaseline(List<RunResult> results, String baselineFile) throws IOException {
+        Path baselinePath = Paths.get(baselineFile);
+        if (baselinePath.getParent() != null) {
+            Files.createDirectories(baselinePath.getParent());
+        }
+        try (PrintWriter writer = new PrintWriter(new FileWriter(baselineFile))) {
+            writer.println("# <configuration>\t<queries/s>\t<p50 ms>\t<p99 ms>");
+            for (RunResult result : results) {
+                writer.printf(Locale.ROOT, "%s\t%.1f\t%d\t%d%n", result.name, result.getThroughput(),
+                    result.getPercentile(50), result.getPercentile(99));
+            }
+        }
+        System.out.println("Baseline written to " + baselineFile);
+    }
+
+    /**
+     * Compares the runs with the runs of the same configuration in a baseline file.
+     * Configurations missing from the baseline are reported, but do not fail the comparison.
+     * @param results the results of the runs
+     * @param baselineFile a file written by saveBaseline
+     * @param tolerance the allowed relative change, e.g. 0.2 for 20%
+     * @return true if no configuration regressed by more than the tolerance
+     */
+    private static boolean compareWithBaseline(List<RunResult> results, String baselineFile, double tolerance) throws IOException {
+        Map<String, double[]> baseline = new HashMap<>();
+        for (String line : Files.readAllLines(Paths.get(baselineFile))) {
+            String[] fields = line.split("\t");
+            if (line.startsWith("#") || fields.length < 4) {
+                continue;
+            }
+            baseline.put(fields[0], new double[] {Double.parseDouble(fields[1]), Double.parseDouble(fields[2]), Double.parseDouble(fields[3])});
+        }
+
+        List<String> regressions = new ArrayList<>();
+        for (RunResult result : results) {
+            double[] expected = baseline.get(result.name);
+            if (expected == null) {
+                System.out.println("No baseline for " + result.name);
+                continue;
+            }
+            if (result.getThroughput() < expected[0] * (1 - tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s: %.1f queries/s, baseline %.1f", result.name, result.getThroughput(), expected[0]));
+            }
+            if (result.getPercentile(50) > expected[1] * (1 + tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s: p50 %d ms, baseline %.0f ms", result.name, result.getPercentile(50), expected[1]));
+            }
+            if (result.getPercentile(99) > expected[2] * (1 + tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s: p99 %d ms, baseline %.0f ms", result.name, result.getPercentile(99), expected[2]));
+            }
+        }
+
+        if (regressions.isEmpty()) {
+            System.out.printf(Locale.ROOT, "No regressions of more than %.0f%% compared with %s%n", tolerance * 100, baselineFile);
+            return true;
+        }
+        System.out.printf(Locale.ROOT, "Regressions of more than %.0f%% compared with %s:%n", tolerance * 100, baselineFile);
+        regressions.forEach(regression -> System.out.println("  " + regression));
+        return false;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].startsWith("--")) {
+                options.put(args[i], args[i + 1]);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * The turnaround times and sampled queue lengths of a single run
+     */
+    private static class RunResult {
+        final String name;
+        final int zoneCount;
+        final List<Long> turnaroundTimes = new ArrayList<>();
+        final long[] queueLengthSum;
+        final int[] queueLengthMax;
+        final int[] queueSamples;
+        final AtomicInteger rejected = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        long elapsedTime;
+        long cacheHits;
+        long cacheMisses;
+
+        RunResult(String name, int zoneCount) {
+            this.name = name;
+            this.zoneCount = zoneCount;
+            this.queueLengthSum = new long[zoneCount + 1];
+            this.queueLengthMax = new int[zoneCount + 1];
+            this.queueSamples = new int[zoneCount + 1];
+        }
+
+        synchronized void addTurnaroundTime(long turnaroundTime) {
+            turnaroundTimes.add(turnaroundTime);
+        }
+
+        synchronized void addQueueSample(int zone, int queueLength) {
+            queueLengthSum[zone] += queueLength;
+            queueLengthMax[zone] = Math.max(queueLengthMax[zone], queueLength);
+            queueSamples[zone]++;
+        }
+
+        /**
+         * Adds the cache hits and misses of a server, read from its metrics in the Prometheus text format
+         */
+        synchronized void addCacheMetrics(String metrics) {
+            for (String line : metrics.split("\n")) {
+                if (line.startsWith("server_cache_hits_total")) {
+                    cacheHits += Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+                } else if (line.startsWith("server_cache_misses_total")) {
+                    cacheMisses += Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+                }
+            }
+        }
+
+        synchronized double getCacheHitPercentage() {
+            long lookups = cacheHits + cacheMisses;
+            return lookups > 0 ? 100.0 * cacheHits / lookups : 0;
+        }
+
+        synchronized double getThroughput() {
+            return elapsedTime > 0 ? turnaroundTimes.size() * 1000.0 / elapsedTime : 0;
+        }
+
+        synchronized long getPercentile(double percentile) {
+            if (turnaroundTimes.isEmpty()) {
+                return 0;
+            }
+            List<Long> sortedTimes = new ArrayList<>(turnaroundTimes);
+            Collections.sort(sortedTimes);
+            int index = (int) Math.ceil(percentile / 100 * sortedTimes.size()) - 1;
+            return sortedTimes.get(Math.max(0, index));
+        }
+
+        synchronized double getAverageQueueLength(int zone) {
+            return queueSamples[zone] > 0 ? (double) queueLengthSum[zone] / queueSamples[zone] : 0;
+        }
+
+        synchronized int getMaxQueueLength(int zone) {
+            return queueLengthMax[zone];
+        }
+    }
+}
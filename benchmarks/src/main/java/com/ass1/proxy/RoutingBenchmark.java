@@ -0,0 +1,72 @@
+package com.ass1.proxy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ass1.server.ServerNames;
+
+/**
+ * Routing decisions of the proxy for five zones with one or more replicas each, with queue lengths
+ * that are either all below the overload threshold or spread around it so requests spill to neighbours.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RoutingBenchmark {
+    private static final int ZONE_COUNT = 5;
+
+    @Param({"idle", "overloaded"})
+    public String load;
+
+    @Param({"1", "3"})
+    public int replicas;
+
+    private Topology topology;
+    private Map<String, Integer> serverQueueLength;
+    private Map<String, Integer> serverAccessCount;
+    private int zone;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        Map<Integer, List<String>> zoneReplicas = new HashMap<>();
+        serverQueueLength = new HashMap<>();
+        serverAccessCount = new HashMap<>();
+        for (int i = 1; i <= ZONE_COUNT; i++) {
+            List<String> serverNames = new ArrayList<>();
+            for (int replica = 1; replica <= replicas; replica++) {
+                String serverName = ServerNames.bindingName(i, replica);
+                serverNames.add(serverName);
+                serverQueueLength.put(serverName, "idle".equals(load) ? random.nextInt(18) : 10 + random.nextInt(20));
+                serverAccessCount.put(serverName, random.nextInt(18));
+            }
+            zoneReplicas.put(i, serverNames);
+        }
+        topology = new Topology(zoneReplicas);
+    }
+
+    @Benchmark
+    public String selectServer() {
+        zone = (zone % ZONE_COUNT) + 1;
+        return Proxy.selectServer(zone, topology, serverQueueLength, serverAccessCount);
+    }
+}
@@ -0,0 +1,49 @@
+package com.ass1.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the dataset and the queries of the client input file for the server benchmarks.
+ */
+final class BenchmarkQueries {
+
+    private BenchmarkQueries() {
+    }
+
+    /**
+     * Loads the city index from the bundled dataset, failing if it is missing or empty
+     */
+    static CityIndex loadCityIndex() throws IOException {
+        CityIndex cityIndex = CityIndex.loadFromCSV();
+        if (cityIndex.getCountryCount() == 0) {
+            throw new IllegalStateException("The dataset com/ass1/server/data/exercise_1_dataset.csv is missing or empty");
+        }
+        return cityIndex;
+    }
+
+    /**
+     * Loads the queries of the client input file as server requests
+     */
+    static List<Request> loadRequests() throws IOException {
+        List<Request> requests = new ArrayList<>();
+        for (InputQuery query : InputQuery.loadBundled()) {
+            requests.add(new Request(query.getMethod(), query.getArgs(), query.getZone()));
+        }
+        return requests;
+    }
+
+    /**
+     * Returns the requests for a single server method
+     */
+    static List<Request> filter(List<Request> requests, String method, int argCount) {
+        List<Request> filtered = new ArrayList<>();
+        for (Request request : requests) {
+            if (request.getMethod().equals(method) && request.getArgs().length == argCount) {
+                filtered.add(request);
+            }
+        }
+        return filtered;
+    }
+}
@@ -0,0 +1,67 @@
+package com.ass1.server;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Server cache lookups and updates under contention, and construction of request keys.
+ * The cache is shared by all benchmark threads and locked the same way the server does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheBenchmark {
+    private Cache cache;
+    private String[] requestKeys;
+    private List<Request> requests;
+
+    @Setup
+    public void setUp() throws IOException {
+        cache = new Cache(150);
+        requests = BenchmarkQueries.loadRequests();
+        requestKeys = requests.stream().map(Request::getRequestKey).toArray(String[]::new);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer getOrPut() {
+        int index = ThreadLocalRandom.current().nextInt(requestKeys.length);
+        String requestKey = requestKeys[index];
+        synchronized (cache) {
+            Integer result = cache.get(requestKey);
+            if (result == null) {
+                cache.put(requestKey, requestKey.length(), requests.get(index).getCountryDependencies(), 0);
+            }
+            return result;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Integer getOrPutUncontended() {
+        return getOrPut();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String requestKey() {
+        return requests.get(ThreadLocalRandom.current().nextInt(requests.size())).getRequestKey();
+    }
+}
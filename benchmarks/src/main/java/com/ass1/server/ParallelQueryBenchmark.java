@@ -0,0 +1,52 @@
+package com.ass1.server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sequential and parallel getNumberOfCountries over generated datasets of up to 10 million cities,
+ * showing how the fork-join execution scales with the size of the data.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ParallelQueryBenchmark {
+    @Param({"100000", "1000000", "10000000"})
+    public int cities;
+
+    @Param({"sequential", "parallel"})
+    public String mode;
+
+    private CityIndex cityIndex;
+
+    @Setup
+    public void setUp() {
+        cityIndex = CityIndex.synthetic(cities, 250, 42)
+            .withParallelThreshold("parallel".equals(mode) ? 0 : Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int getNumberOfCountries() {
+        // Few countries have this many large cities, so most countries are scanned completely
+        return cityIndex.getNumberOfCountries(cities / 1000, 1_000_000);
+    }
+
+    @Benchmark
+    public int getNumberOfCountriesInRange() {
+        return cityIndex.getNumberOfCountries(cities / 1000, 10_000, 100_000);
+    }
+}
@@ -0,0 +1,73 @@
+package com.ass1.server;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The four query methods over the real dataset, using the arguments of the client input file in turn.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryBenchmark {
+    private CityIndex cityIndex;
+    private List<Request> populationRequests;
+    private List<Request> citiesRequests;
+    private List<Request> countriesRequests;
+    private List<Request> countriesRangeRequests;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        cityIndex = BenchmarkQueries.loadCityIndex();
+        List<Request> requests = BenchmarkQueries.loadRequests();
+        populationRequests = BenchmarkQueries.filter(requests, "getPopulationOfCountry", 1);
+        citiesRequests = BenchmarkQueries.filter(requests, "getNumberOfCities", 2);
+        countriesRequests = BenchmarkQueries.filter(requests, "getNumberOfCountries", 2);
+        countriesRangeRequests = BenchmarkQueries.filter(requests, "getNumberOfCountries", 3);
+    }
+
+    private Object[] nextArgs(List<Request> requests) {
+        next++;
+        return requests.get(Math.floorMod(next, requests.size())).getArgs();
+    }
+
+    @Benchmark
+    public int getPopulationOfCountry() {
+        Object[] args = nextArgs(populationRequests);
+        return cityIndex.getPopulationOfCountry((String) args[0]);
+    }
+
+    @Benchmark
+    public int getNumberOfCities() {
+        Object[] args = nextArgs(citiesRequests);
+        return cityIndex.getNumberOfCities((String) args[0], (int) args[1]);
+    }
+
+    @Benchmark
+    public int getNumberOfCountries() {
+        Object[] args = nextArgs(countriesRequests);
+        return cityIndex.getNumberOfCountries((int) args[0], (int) args[1]);
+    }
+
+    @Benchmark
+    public int getNumberOfCountriesInRange() {
+        Object[] args = nextArgs(countriesRangeRequests);
+        return cityIndex.getNumberOfCountries((int) args[0], (int) args[1], (int) args[2]);
+    }
+}
@@ -5,20 +5,30 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.ass1.proxy.ProxyInterface;
+import com.ass1.server.InputQuery;
 import com.ass1.server.Response;
 import com.ass1.server.ServerInterface;
+import com.ass1.server.ServerNames;
+import com.ass1.trace.TraceReader;
+import com.ass1.trace.TraceRecord;
 
 public class Client {
+    // Max amount of zones a rejected query is tried at
+    private static final int MAX_ATTEMPTS = 5;
 
     public static void main(String[] args) {
         try {
@@ -27,6 +37,9 @@ public class Client {
             String inputFile = "src/main/resources/com/ass1/client/data/exercise_1_input.txt";
             String outputFile = "naive.txt";
             String cacheType = "";
+            double hedgePercentile = 0;
+            String replayFile = null;
+            double speed = 1;
             Cache cache = new Cache(45);
 
             // Create a map to store stats for each method
@@ -44,6 +57,18 @@ public class Client {
                 } else if (args[i].equals("--output") && i + 1 < args.length) {
                     outputFile = args[i + 1];
                 }
+                if (args[i].equals("--hedge") && i + 1 < args.length) {
+                    hedgePercentile = Double.parseDouble(args[i + 1]);
+                }
+                if (args[i].equals("--replay") && i + 1 < args.length) {
+                    replayFile = args[i + 1];
+                }
+                if (args[i].equals("--speed") && i + 1 < args.length) {
+                    speed = Double.parseDouble(args[i + 1]);
+                    if (!(speed > 0)) {
+                        throw new IllegalArgumentException("--speed must be greater than 0, got " + args[i + 1]);
+                    }
+                }
             }
 
             final String finalCacheType = cacheType;
@@ -66,7 +91,11 @@ public class Client {
             outputFile = Paths.get("output", outputFile).toString();
 
             // give user info
-            System.out.println("Client up, writing to file " + outputFile + ", with delay " + delay + "ms");
+            if (replayFile != null) {
+                System.out.println("Client up, writing to file " + outputFile + ", replaying " + replayFile + " at speed " + speed);
+            } else {
+                System.out.println("Client up, writing to file " + outputFile + ", with delay " + delay + "ms");
+            }
             Thread.sleep(3000);
 
             try (FileWriter writer = new FileWriter(outputFile)) {
@@ -74,20 +103,35 @@ public class Client {
                 // Connect to RMI registry at default port 1099 and search for the proxy from that registry
                 Registry registry = LocateRegistry.getRegistry();
                 ProxyInterface proxy = (ProxyInterface) registry.lookup("Proxy"); // Assume 'Proxy' is registered with this name
+
+                // Send duplicates of slow queries to another zone if hedging is enabled
+                Hedger hedger = (hedgePercentile > 0) ? new Hedger(proxy, registry, hedgePercentile) : null;
                 
-                // Parse and execute queries
-                List<Query> queries = parseInputFile(inputFile);
+                // Parse and execute queries, either from the input file or from a recorded trace
+                List<Query> queries = (replayFile != null) ? parseTraceFile(replayFile) : parseInputFile(inputFile);
                 
                 // Loop through each query, get the available server for the querys zone, and execute the query
-                for (Query query : queries) {
+                long replayStart = System.currentTimeMillis();
+                for (int i = 0; i < queries.size(); i++) {
+                    Query query = queries.get(i);
+
+                    // When replaying, send each query at its recorded time after the first one, scaled by the speed,
+                    // so the time spent sending the earlier queries does not add up
+                    if (replayFile != null) {
+                        long sendTime = replayStart + (long) ((query.timestamp - queries.get(0).timestamp) / speed);
+                        long waitTime = sendTime - System.currentTimeMillis();
+                        if (waitTime > 0) {
+                            Thread.sleep(waitTime);
+                        }
+                    }
 
-                    Integer serverZone = proxy.getAvailableServer(query.zone);
-                    ServerInterface server = (ServerInterface) registry.lookup("Server zone "+serverZone);
+                    String serverName = proxy.getAvailableServerName(query.zone, query.getKey());
+                    ServerInterface server = (ServerInterface) registry.lookup(serverName);
                     
                     // Execute the query on a new thread
                     Thread thread = new Thread(() -> {
                         try {
-                            executeQueries(query, server, writer, finalCacheType.equals("client"), cache, methodStats);
+                            executeQueries(query, serverName, server, proxy, registry, writer, finalCacheType.equals("client"), cache, methodStats, hedger);
                         } catch (Exception e) {
                             e.printStackTrace();
                         }
@@ -95,7 +139,9 @@ public class Client {
                     thread.start();
                     threads.add(thread);
                     
-                    Thread.sleep(delay);
+                    if (replayFile == null) {
+                        Thread.sleep(delay);
+                    }
                 }
                 
                 // wait for threads to finish
@@ -104,7 +150,7 @@ public class Client {
                 }
                 
                 // After all queries log the final stats for each method type
-                logFinalStats(writer, methodStats);
+                logFinalStats(writer, methodStats, hedger);
             }
 
         } catch (Exception e) {
@@ -159,6 +205,51 @@ public class Client {
         return queries;
     }
 
+    /**
+     * Parses a trace recorded by the servers into Query objects, ordered by the
+     * time the servers received them. Only served requests are replayed, as
+     * requests rejected by a zone were retried by the client at another zone,
+     * which recorded the served request, and hedged queries are replayed once.
+     *
+     * @param traceFile The path to the trace file.
+     * @return A list of Query objects with the time they were received at.
+     */
+    private static List<Query> parseTraceFile(String traceFile) {
+        List<Query> queries = new ArrayList<>();
+
+        try {
+            List<TraceRecord> records = TraceReader.readAll(traceFile);
+            records.sort(Comparator.comparingLong(TraceRecord::getTimestamp));
+
+            // A hedged query is recorded by both servers that served it, so only its first arrival is replayed
+            Set<Long> replayedRequestIds = new HashSet<>();
+            for (TraceRecord record : records) {
+                if (record.getType() != TraceRecord.Type.REQUEST
+                        || (record.getRequestId() != -1 && !replayedRequestIds.add(record.getRequestId()))) {
+                    continue;
+                }
+
+                // The input file spells some method names differently from the server
+                String methodName = switch (record.getMethod()) {
+                    case "getPopulationOfCountry" -> "getPopulationofCountry";
+                    case "getNumberOfCities"      -> "getNumberofCities";
+                    case "getNumberOfCountries"   -> "getNumberofCountries";
+                    default                       -> record.getMethod();
+                };
+                List<String> args = new ArrayList<>();
+                for (Object arg : record.getArgs()) {
+                    args.add(arg.toString());
+                }
+                String queryString = methodName + " " + String.join(" ", args) + " Zone:" + record.getClientZone();
+
+                queries.add(new Query(methodName, args, record.getClientZone(), queryString, record.getTimestamp()));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return queries;
+    }
+
     /**
      * Executes list of queries by invoking the appropriate method on the
      * server, records the turnaround, execution, and waiting times, and logs
@@ -166,12 +257,18 @@ public class Client {
      * and max times) for each method type.
      *
      * @param queries A list of Query objects that represent the parsed queries.
+     * @param serverName The name of the server in the registry.
      * @param server The RMI server interface that allows for remote method
      * invocation.
+     * @param proxy The proxy, used to find another server if the server
+     * rejects the query.
+     * @param registry The RMI registry, used to look up the other server.
      * @param outputFile The path to the output file where results and stats
      * will be logged.
+     * @param hedger Sends duplicates of slow queries to another zone, or null
+     * if hedging is disabled.
      */
-    private static void executeQueries(Query query, ServerInterface server, FileWriter writer, boolean clientCacheEnabled, Cache cache, HashMap<String, TaskStats> methodStats) {
+    private static void executeQueries(Query query, String serverName, ServerInterface server, ProxyInterface proxy, Registry registry, FileWriter writer, boolean clientCacheEnabled, Cache cache, HashMap<String, TaskStats> methodStats, Hedger hedger) {
         try {
             int clientZone = query.zone;
                 
@@ -185,21 +282,37 @@ public class Client {
             if (clientCacheEnabled && cache.containsKey(query.toString())) {
                 result = new Response(cache.get(query.toString()), 0, 0, 0);                    
             } else {
-                
-                // Executing remote method invocation based on the method name
-                switch (query.getMethodName()) {
-                    case "getPopulationofCountry"   -> result = server.getPopulationOfCountry(query.args.get(0), clientZone);
-                    case "getNumberofCities"        -> result = server.getNumberOfCities(query.args.get(0), Integer.parseInt(query.args.get(1)), clientZone);
-                    case "getNumberofCountries1"    -> result = server.getNumberOfCountries(Integer.parseInt(query.args.get(0)), Integer.parseInt(query.args.get(1)), clientZone);
-                    case "getNumberofCountries2"    -> result = server.getNumberOfCountries(Integer.parseInt(query.args.get(0)), Integer.parseInt(query.args.get(1)), Integer.parseInt(query.args.get(2)), clientZone);
+                result = (hedger != null) ? hedger.invoke(query, serverName, server, clientZone) : invokeQuery(query, server, clientZone);
+
+                // Retry at another server if the server rejected the query because its waiting list is full,
+                // at the zone hinted by the server if any, otherwise at the next best server known by the proxy
+                String retryServerName = serverName;
+                for (int attempt = 1; result.isRejected() && attempt < MAX_ATTEMPTS; attempt++) {
+                    retryServerName = (result.getRetryZone() > 0)
+                        ? ServerNames.bindingName(result.getRetryZone(), 1)
+                        : proxy.getAlternativeServerName(clientZone, retryServerName);
+                    if (retryServerName == null) {
+                        break;
+                    }
+                    ServerInterface retryServer = (ServerInterface) registry.lookup(retryServerName);
+                    result = invokeQuery(query, retryServer, clientZone);
                 }
             }
+
+            long turnaroundTime = System.currentTimeMillis() - startTurnaroundTime;
+
+            if (result.isRejected()) {
+                logRejected(writer, query, turnaroundTime);
+                synchronized (methodStats) {
+                    methodStats.computeIfAbsent(query.getMethodName(), k -> new TaskStats()).addRejected();
+                }
+                return;
+            }
+
             if (clientCacheEnabled) {
                 cache.put(query.toString(), result.getResult());
             }
 
-            long turnaroundTime = System.currentTimeMillis() - startTurnaroundTime;
-
             // Log the result and time metrics for the query
             logResult(writer, query, result, turnaroundTime);
 
@@ -210,6 +323,42 @@ public class Client {
         }
     }
 
+    /**
+     * Executes the remote method invocation of a query based on the method name
+     *
+     * @param query The query to execute.
+     * @param server The server to execute the query at.
+     * @param clientZone The zone of the client.
+     * @return The response from the server.
+     * @throws RemoteException If the remote method invocation fails.
+     */
+    private static Response invokeQuery(Query query, ServerInterface server, int clientZone) throws RemoteException {
+        return switch (query.getMethodName()) {
+            case "getPopulationofCountry"   -> server.getPopulationOfCountry(query.args.get(0), clientZone);
+            case "getNumberofCities"        -> server.getNumberOfCities(query.args.get(0), Integer.parseInt(query.args.get(1)), clientZone);
+            case "getNumberofCountries1"    -> server.getNumberOfCountries(Integer.parseInt(query.args.get(0)), Integer.parseInt(query.args.get(1)), clientZone);
+            case "getNumberofCountries2"    -> server.getNumberOfCountries(Integer.parseInt(query.args.get(0)), Integer.parseInt(query.args.get(1)), Integer.parseInt(query.args.get(2)), clientZone);
+            default                         -> new Response(-1, -1, -1, -1);
+        };
+    }
+
+    /**
+     * Logs a query that was rejected by every zone it was tried at.
+     *
+     * @param writer The FileWriter used to log the data to the output file.
+     * @param query The Query object that was rejected.
+     * @param turnaroundTime The time spent before the query was given up.
+     * @throws IOException If there is an error writing to the output file.
+     */
+    private static void logRejected(FileWriter writer, Query query, long turnaroundTime) throws IOException {
+        String output = String.format("rejected %s (turnaround time: %d ms)\n", query.toString(), turnaroundTime);
+
+        synchronized (writer) {
+            writer.write(output);
+        }
+        System.out.println(output);
+    }
+
     /**
      * Logs the result of a query execution and its timing metrics to the output
      * file.
@@ -246,24 +395,31 @@ public class Client {
      *
      */
     private static void updateStats(HashMap<String, TaskStats> methodStats, String methodName, long turnaroundTime, long executionTime, long waitingTime) {
-        // Retrieve the current stats for this method type or create a new TaskStats if none exist
-        TaskStats stats = methodStats.getOrDefault(methodName, new TaskStats());
-        // Add the new task metrics to the stats
-        stats.addTask(turnaroundTime, executionTime, waitingTime);
-        // Update the map with the new stats
-        methodStats.put(methodName, stats);
+        synchronized (methodStats) {
+            // Retrieve the current stats for this method type or create a new TaskStats if none exist
+            TaskStats stats = methodStats.getOrDefault(methodName, new TaskStats());
+            // Add the new task metrics to the stats
+            stats.addTask(turnaroundTime, executionTime, waitingTime);
+            // Update the map with the new stats
+            methodStats.put(methodName, stats);
+        }
     }
 
-    /* Logs the final stats for all method types to the output file after all queries are processed. */
-    private static void logFinalStats(FileWriter writer, HashMap<String, TaskStats> methodStats) throws IOException {
+    /* Logs the final stats for all method types, and the hedging stats if enabled, to the output file after all queries are processed. */
+    private static void logFinalStats(FileWriter writer, HashMap<String, TaskStats> methodStats, Hedger hedger) throws IOException {
         // Iterate over each method type and log its stats (average, min, max times)
         synchronized (writer) {
             System.out.println("\nFinal stats:");
             for (String methodName : methodStats.keySet()) {
                 TaskStats stats = methodStats.get(methodName);
-                String output = String.format("%s avg turn-around time: %d ms, avg execution time: %d ms, avg waiting time: %d ms, min turn-around time: %d ms, max turn-around time: %d ms\n",
+                String output = String.format("%s avg turn-around time: %d ms, avg execution time: %d ms, avg waiting time: %d ms, min turn-around time: %d ms, max turn-around time: %d ms, rejected: %d\n",
                 methodName, stats.getAverageTurnaroundTime(), stats.getAverageExecutionTime(), stats.getAverageWaitingTime(),
-                stats.getMinTurnaroundTime(), stats.getMaxTurnaroundTime());
+                stats.getMinTurnaroundTime(), stats.getMaxTurnaroundTime(), stats.getRejectedCount());
+                writer.write(output);
+                System.out.println(output);
+            }
+            if (hedger != null) {
+                String output = hedger.getSummary();
                 writer.write(output);
                 System.out.println(output);
             }
@@ -279,6 +435,7 @@ public class Client {
         List<String> args;
         int zone;
         String queryString;
+        long timestamp;
 
         /**
          * Constructor to initialize a Query object.
@@ -289,10 +446,21 @@ public class Client {
          * @param zone The zone number associated with the query.
          */
         Query(String methodName, List<String> args, int zone, String queryString) {
+            this(methodName, args, zone, queryString, 0);
+        }
+
+        /**
+         * Constructor to initialize a Query object replayed from a trace.
+         *
+         * @param timestamp The time the query was received in the trace, in
+         * ms since the epoch.
+         */
+        Query(String methodName, List<String> args, int zone, String queryString, long timestamp) {
             this.methodName = methodName;
             this.args = args;
             this.zone = zone;
             this.queryString = queryString;
+            this.timestamp = timestamp;
         }
 
         /**
@@ -318,6 +486,26 @@ public class Client {
             }
             return methodName;
         }
+
+        /**
+         * Returns the name of the server method of the query
+         */
+        public String getServerMethodName() {
+            return switch (methodName) {
+                case "getPopulationofCountry" -> "getPopulationOfCountry";
+                case "getNumberofCities"      -> "getNumberOfCities";
+                case "getNumberofCountries"   -> "getNumberOfCountries";
+                default                       -> methodName;
+            };
+        }
+
+        /**
+         * Returns a key identifying the query, independent of the zone it is made from,
+         * which is the key the server caches the query by
+         */
+        public String getKey() {
+            return InputQuery.getKey(getServerMethodName(), args.toArray());
+        }
     }
 
     /* A helper class to track stats (turnaround, execution, waiting times) for each method type.*/
@@ -329,6 +517,7 @@ public class Client {
         private long minTurnaroundTime = Long.MAX_VALUE;  // Minimum turnaround time observed
         private long maxTurnaroundTime = Long.MIN_VALUE;  // Maximum turnaround time observed
         private int count = 0;  // Number of tasks executed for this method type
+        private int rejectedCount = 0;  // Number of tasks rejected by every zone they were tried at
 
         /**
          * Adds a new task's metrics to the stats for this method type.
@@ -355,6 +544,13 @@ public class Client {
             }
         }
 
+        /**
+         * Counts a task that was rejected by every zone it was tried at.
+         */
+        public void addRejected() {
+            rejectedCount++;
+        }
+
         // Getters for stats
         public long getAverageTurnaroundTime() {
             return count > 0 ? totalTurnaroundTime / count : 0;
@@ -375,6 +571,10 @@ public class Client {
         public long getMaxTurnaroundTime() {
             return maxTurnaroundTime;
         }
+
+        public int getRejectedCount() {
+            return rejectedCount;
+        }
     }
 }
 
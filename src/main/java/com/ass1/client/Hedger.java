@@ -0,0 +1,238 @@
+package com.ass1.client;
+
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.ass1.proxy.ProxyInterface;
+import com.ass1.server.Response;
+import com.ass1.server.ServerInterface;
+
+/**
+ * Sends a duplicate of a query to another server if the response has not arrived within
+ * a percentile of the observed turnaround times, and uses whichever response arrives first.
+ * The request that loses is cancelled at its server if it is still in the waiting list.
+ */
+class Hedger {
+    // Amount of observed turnaround times needed before queries are hedged
+    private static final int MIN_SAMPLES = 20;
+    // Amount of most recent turnaround times the hedge delay is computed from
+    private static final int DELAY_WINDOW = 200;
+
+    private final ProxyInterface proxy;
+    private final Registry registry;
+    private final double percentile;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Long> turnaroundTimes = new ArrayList<>();
+    // The most recent turnaround times, overwritten in a ring, so computing the hedge delay does not grow with the run
+    private final long[] recentTurnaroundTimes = new long[DELAY_WINDOW];
+    private int recentTimeCount = 0;
+    private int nextRecentIndex = 0;
+    private final List<Long> unhedgedTurnaroundTimes = new ArrayList<>();
+    private final List<CompletableFuture<?>> pendingPrimaries = new ArrayList<>();
+    private int hedgesFired = 0;
+    private int hedgesWon = 0;
+    // Amount of unhedged turnaround times that are only lower bounds, as their primary was cancelled
+    private int cancelledPrimaries = 0;
+
+    /**
+     * Constructs a hedger
+     * @param proxy the proxy used to find the server to send duplicates to
+     * @param registry the registry used to look up servers
+     * @param percentile the percentile of observed turnaround times after which a duplicate is sent, e.g. 95
+     */
+    Hedger(ProxyInterface proxy, Registry registry, double percentile) {
+        this.proxy = proxy;
+        this.registry = registry;
+        this.percentile = percentile;
+    }
+
+    /**
+     * Executes a query at a server, sending a duplicate to the next best server if it is slow
+     * @param query the query to execute
+     * @param serverName the name of the server in the registry
+     * @param server the server to execute the query at
+     * @param clientZone the zone of the client
+     * @return the first successful response, or a rejected response if both were rejected
+     */
+    Response invoke(Client.Query query, String serverName, ServerInterface server, int clientZone) throws Exception {
+        long startTime = System.currentTimeMillis();
+        long hedgeDelay = getHedgeDelay();
+
+        // The duplicate shares the id of the primary, so both are recorded as the same request in a trace.
+        // Requests are cancelled at a single server, so the shared id never cancels the other request.
+        long requestId = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+        CompletableFuture<Response> primary = submit(query, server, clientZone, requestId);
+
+        if (hedgeDelay < 0) {
+            Response response = primary.get();
+            recordQuery(System.currentTimeMillis() - startTime);
+            return response;
+        }
+        try {
+            Response response = primary.get(hedgeDelay, TimeUnit.MILLISECONDS);
+            recordQuery(System.currentTimeMillis() - startTime);
+            return response;
+        } catch (TimeoutException e) {
+            // The response is slow, send a duplicate to the next best server
+        }
+
+        String hedgeServerName = proxy.getAlternativeServerName(query.zone, serverName);
+        if (hedgeServerName == null) {
+            Response response = primary.get();
+            recordQuery(System.currentTimeMillis() - startTime);
+            return response;
+        }
+        ServerInterface hedgeServer = (ServerInterface) registry.lookup(hedgeServerName);
+        CompletableFuture<Response> hedge = submit(query, hedgeServer, clientZone, requestId);
+
+        // Complete with the first successful response, or the primary response if none are successful
+        CompletableFuture<Response> first = new CompletableFuture<>();
+        primary.thenAccept(response -> completeIfSuccessful(first, response));
+        hedge.thenAccept(response -> completeIfSuccessful(first, response));
+        CompletableFuture.allOf(primary, hedge).whenComplete((ignored, e) -> {
+            if (e != null) {
+                first.completeExceptionally(e);
+            } else {
+                first.complete(primary.join());
+            }
+        });
+
+        Response response = first.get();
+        long turnaroundTime = System.currentTimeMillis() - startTime;
+        boolean hedgeWon = (response == hedge.getNow(null));
+
+        // Cancel the loser if it is still waiting in the queue
+        if (hedgeWon) {
+            executor.submit(() -> server.cancelRequest(requestId));
+        } else {
+            executor.submit(() -> hedgeServer.cancelRequest(requestId));
+        }
+
+        synchronized (this) {
+            hedgesFired++;
+            addTurnaroundTime(turnaroundTime);
+            if (!hedgeWon) {
+                unhedgedTurnaroundTimes.add(turnaroundTime);
+                return response;
+            }
+            hedgesWon++;
+
+            // Estimate the turnaround time without hedging from when the primary finishes,
+            // a cancelled primary would at least have taken as long as the hedge, so its time is only a lower bound
+            pendingPrimaries.add(primary.handle((primaryResponse, e) -> {
+                boolean completed = (primaryResponse != null && !primaryResponse.isRejected());
+                long unhedgedTime = completed ? System.currentTimeMillis() - startTime : turnaroundTime;
+                synchronized (this) {
+                    unhedgedTurnaroundTimes.add(unhedgedTime);
+                    if (!completed) {
+                        cancelledPrimaries++;
+                    }
+                }
+                return null;
+            }));
+        }
+        return response;
+    }
+
+    /**
+     * Returns a summary of how often queries were hedged, and the p99 turnaround time with and without hedging.
+     * The p99 without hedging is a lower bound if primaries were cancelled, as their turnaround time is not known.
+     */
+    String getSummary() {
+        List<CompletableFuture<?>> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(pendingPrimaries);
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+
+        synchronized (this) {
+            int queries = turnaroundTimes.size();
+            String unhedgedP99 = (cancelledPrimaries == 0)
+                ? String.format("%d ms", getPercentile(unhedgedTurnaroundTimes, 99))
+                : String.format("at least %d ms (lower bound, %d cancelled primaries counted at the turn-around time of their hedge)",
+                    getPercentile(unhedgedTurnaroundTimes, 99), cancelledPrimaries);
+            return String.format("Hedging at p%.0f: hedged %d of %d queries (%.1f%%), hedge won %d, p99 turn-around time: %d ms, p99 turn-around time without hedging: %s\n",
+                percentile, hedgesFired, queries, queries > 0 ? 100.0 * hedgesFired / queries : 0.0, hedgesWon,
+                getPercentile(turnaroundTimes, 99), unhedgedP99);
+        }
+    }
+
+    /**
+     * Returns the time to wait before sending a duplicate, or -1 if there are too few observed turnaround times
+     */
+    private synchronized long getHedgeDelay() {
+        if (recentTimeCount < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] sortedTimes = Arrays.copyOf(recentTurnaroundTimes, recentTimeCount);
+        Arrays.sort(sortedTimes);
+        return getPercentile(sortedTimes, percentile);
+    }
+
+    private synchronized void recordQuery(long turnaroundTime) {
+        addTurnaroundTime(turnaroundTime);
+        unhedgedTurnaroundTimes.add(turnaroundTime);
+    }
+
+    private synchronized void addTurnaroundTime(long turnaroundTime) {
+        turnaroundTimes.add(turnaroundTime);
+        recentTurnaroundTimes[nextRecentIndex] = turnaroundTime;
+        nextRecentIndex = (nextRecentIndex + 1) % DELAY_WINDOW;
+        recentTimeCount = Math.min(recentTimeCount + 1, DELAY_WINDOW);
+    }
+
+    /**
+     * Executes a cancellable request for a query at a server in another thread
+     */
+    private CompletableFuture<Response> submit(Client.Query query, ServerInterface server, int clientZone, long requestId) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return switch (query.getMethodName()) {
+                    case "getPopulationofCountry"   -> server.executeRequest("getPopulationOfCountry", new Object[] {query.args.get(0)}, clientZone, requestId);
+                    case "getNumberofCities"        -> server.executeRequest("getNumberOfCities", new Object[] {query.args.get(0), Integer.parseInt(query.args.get(1))}, clientZone, requestId);
+                    case "getNumberofCountries1"    -> server.executeRequest("getNumberOfCountries", new Object[] {Integer.parseInt(query.args.get(0)), Integer.parseInt(query.args.get(1))}, clientZone, requestId);
+                    case "getNumberofCountries2"    -> server.executeRequest("getNumberOfCountries", new Object[] {Integer.parseInt(query.args.get(0)), Integer.parseInt(query.args.get(1)), Integer.parseInt(query.args.get(2))}, clientZone, requestId);
+                    default                         -> new Response(-1, -1, -1, -1);
+                };
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private static void completeIfSuccessful(CompletableFuture<Response> future, Response response) {
+        if (!response.isRejected()) {
+            future.complete(response);
+        }
+    }
+
+    /**
+     * Returns the given percentile of a list of times
+     */
+    private static long getPercentile(List<Long> times, double percentile) {
+        if (times.isEmpty()) {
+            return 0;
+        }
+        long[] sortedTimes = times.stream().mapToLong(Long::longValue).sorted().toArray();
+        return getPercentile(sortedTimes, percentile);
+    }
+
+    private static long getPercentile(long[] sortedTimes, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sortedTimes.length) - 1;
+        return sortedTimes[Math.max(0, Math.min(index, sortedTimes.length - 1))];
+    }
+}
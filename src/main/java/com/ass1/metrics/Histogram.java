@@ -0,0 +1,46 @@
+package com.ass1.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of times in ms, with fixed bucket bounds.
+ */
+public class Histogram {
+    private static final long[] BUCKET_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Records a time in the histogram
+     * @param value the time in ms
+     */
+    public void record(long value) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && value > BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        bucketCounts.incrementAndGet(bucket);
+        sum.add(value);
+    }
+
+    /**
+     * Writes the cumulative buckets, sum and count of the histogram in the Prometheus text format
+     * @param sb the builder to write to
+     * @param name name of the metric
+     * @param labels labels of the metric, e.g. zone="1", or an empty string
+     */
+    void writeSamples(StringBuilder sb, String name, String labels) {
+        String labelPrefix = labels.isEmpty() ? "" : labels + ",";
+        long count = 0;
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            count += bucketCounts.get(i);
+            sb.append(name).append("_bucket{").append(labelPrefix).append("le=\"").append(BUCKET_BOUNDS[i]).append("\"} ").append(count).append('\n');
+        }
+        count += bucketCounts.get(BUCKET_BOUNDS.length);
+        sb.append(name).append("_bucket{").append(labelPrefix).append("le=\"+Inf\"} ").append(count).append('\n');
+        sb.append(name).append("_sum").append(MetricsRegistry.formatLabels(labels)).append(' ').append(sum.sum()).append('\n');
+        sb.append(name).append("_count").append(MetricsRegistry.formatLabels(labels)).append(' ').append(count).append('\n');
+    }
+}
@@ -0,0 +1,38 @@
+package com.ass1.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP endpoint exposing metrics in the Prometheus text format at /metrics.
+ */
+public class MetricsHttpServer {
+
+    /**
+     * Starts the HTTP endpoint on a port
+     * @param port the port to listen on
+     * @param metrics supplier of the metrics in the Prometheus text format
+     * @return the started HTTP server
+     * @throws IOException if the port can not be bound
+     */
+    public static HttpServer start(int port, Supplier<String> metrics) throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        httpServer.createContext("/metrics", exchange -> {
+            byte[] body = metrics.get().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        httpServer.start();
+
+        System.out.println("Metrics available at http://localhost:" + port + "/metrics");
+        return httpServer;
+    }
+}
@@ -0,0 +1,153 @@
+package com.ass1.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Live counters, gauges and histograms of a component, e.g. a server zone.
+ * Metrics are registered when the component is created, and recorded without locks,
+ * so they can be updated on the hot path. All metrics of a registry share the same labels.
+ */
+public class MetricsRegistry {
+    private final String labels;
+    private final Map<String, Metric> metrics = new LinkedHashMap<>();
+
+    /**
+     * Constructs a metrics registry
+     * @param labels labels of all metrics in the registry, e.g. zone="1", or an empty string
+     */
+    public MetricsRegistry(String labels) {
+        this.labels = labels;
+    }
+
+    /**
+     * Registers a counter that is incremented by the caller
+     * @param name name of the metric
+     * @param help description of the metric
+     * @return the counter
+     */
+    public synchronized LongAdder counter(String name, String help) {
+        LongAdder counter = new LongAdder();
+        metrics.put(name, new Metric("counter", help, counter::sum, null, null));
+        return counter;
+    }
+
+    /**
+     * Registers a counter whose value is read from a supplier
+     * @param name name of the metric
+     * @param help description of the metric
+     * @param value supplier of the current value
+     */
+    public synchronized void counter(String name, String help, LongSupplier value) {
+        metrics.put(name, new Metric("counter", help, value, null, null));
+    }
+
+    /**
+     * Registers a gauge whose value is read from a supplier
+     * @param name name of the metric
+     * @param help description of the metric
+     * @param value supplier of the current value
+     */
+    public synchronized void gauge(String name, String help, LongSupplier value) {
+        metrics.put(name, new Metric("gauge", help, value, null, null));
+    }
+
+    /**
+     * Registers a gauge with a fractional value, e.g. a ratio, read from a supplier
+     * @param name name of the metric
+     * @param help description of the metric
+     * @param value supplier of the current value
+     */
+    public synchronized void doubleGauge(String name, String help, DoubleSupplier value) {
+        metrics.put(name, new Metric("gauge", help, null, value, null));
+    }
+
+    /**
+     * Registers a histogram of times in ms
+     * @param name name of the metric
+     * @param help description of the metric
+     * @return the histogram
+     */
+    public synchronized Histogram histogram(String name, String help) {
+        Histogram histogram = new Histogram();
+        metrics.put(name, new Metric("histogram", help, null, null, histogram));
+        return histogram;
+    }
+
+    /**
+     * Returns the metrics of the registry in the Prometheus text format
+     */
+    public String toPrometheus() {
+        return toPrometheus(List.of(this));
+    }
+
+    /**
+     * Returns the metrics of several registries in the Prometheus text format,
+     * grouping metrics with the same name from different registries together
+     * @param registries the registries to include
+     */
+    public static String toPrometheus(List<MetricsRegistry> registries) {
+        Set<String> names = new LinkedHashSet<>();
+        for (MetricsRegistry registry : registries) {
+            synchronized (registry) {
+                names.addAll(registry.metrics.keySet());
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (String name : names) {
+            boolean headerWritten = false;
+            for (MetricsRegistry registry : registries) {
+                Metric metric;
+                synchronized (registry) {
+                    metric = registry.metrics.get(name);
+                }
+                if (metric == null) {
+                    continue;
+                }
+                if (!headerWritten) {
+                    sb.append("# HELP ").append(name).append(' ').append(metric.help).append('\n');
+                    sb.append("# TYPE ").append(name).append(' ').append(metric.type).append('\n');
+                    headerWritten = true;
+                }
+                if (metric.histogram != null) {
+                    metric.histogram.writeSamples(sb, name, registry.labels);
+                } else if (metric.doubleValue != null) {
+                    sb.append(name).append(formatLabels(registry.labels)).append(' ').append(metric.doubleValue.getAsDouble()).append('\n');
+                } else {
+                    sb.append(name).append(formatLabels(registry.labels)).append(' ').append(metric.value.getAsLong()).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    static String formatLabels(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    /**
+     * A registered metric, either read from a value supplier or a histogram
+     */
+    private static class Metric {
+        final String type;
+        final String help;
+        final LongSupplier value;
+        final DoubleSupplier doubleValue;
+        final Histogram histogram;
+
+        Metric(String type, String help, LongSupplier value, DoubleSupplier doubleValue, Histogram histogram) {
+            this.type = type;
+            this.help = help;
+            this.value = value;
+            this.doubleValue = doubleValue;
+            this.histogram = histogram;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.ass1.proxy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A consistent-hash ring of zones, used to give every query key an owner zone.
+ * Each zone is placed on the ring at several points, so keys are spread evenly over the zones,
+ * and adding or removing a zone only moves the keys it owns.
+ */
+class HashRing {
+	// Amount of points on the ring for each zone
+	private static final int VIRTUAL_NODES = 100;
+
+	private final TreeMap<Long, Integer> ring = new TreeMap<>();
+
+	/**
+	 * Constructs a ring of zones
+	 * @param zones the zones to place on the ring
+	 */
+	HashRing(Collection<Integer> zones) {
+		for (int zone : zones) {
+			for (int i = 0; i < VIRTUAL_NODES; i++) {
+				ring.put(hash("zone-" + zone + "#" + i), zone);
+			}
+		}
+	}
+
+	/**
+	 * Returns the zone owning a key, which is the first zone on the ring at or after the hash of the key
+	 * @param key the key of the query
+	 * @param excludedZone a zone that should not be returned, e.g. an overloaded zone, or -1
+	 * @return the owner zone, or -1 if there are no other zones on the ring
+	 */
+	int getOwner(String key, int excludedZone) {
+		long keyHash = hash(key);
+		for (Map.Entry<Long, Integer> point : ring.tailMap(keyHash, true).entrySet()) {
+			if (point.getValue() != excludedZone) {
+				return point.getValue();
+			}
+		}
+		// Wrap around to the start of the ring
+		for (Map.Entry<Long, Integer> point : ring.headMap(keyHash, false).entrySet()) {
+			if (point.getValue() != excludedZone) {
+				return point.getValue();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns a 64 bit FNV-1a hash of a string, with the bits mixed so similar strings are spread over the ring
+	 */
+	static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= (b & 0xff);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
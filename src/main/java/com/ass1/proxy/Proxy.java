@@ -1,43 +1,89 @@
 package com.ass1.proxy;
 
+import java.io.IOException;
 import java.nio.channels.AlreadyBoundException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 
+import com.ass1.metrics.MetricsHttpServer;
+import com.ass1.metrics.MetricsRegistry;
 import com.ass1.server.ServerInterface;
+import com.ass1.server.ServerNames;
+import com.ass1.trace.TraceRecord;
+import com.ass1.trace.TraceWriter;
 
 public class Proxy extends UnicastRemoteObject implements ProxyInterface {
-	private final HashMap<Integer, String> serverNames;
-	private final HashMap<Integer, Integer> serverQueueLength;
-	private final HashMap<Integer, Integer> serverAccessCount;
+	// Queue length at which a zone is considered overloaded
+	private static final int OVERLOAD_THRESHOLD = 18;
+	// Amount of neighbouring zones requests from an overloaded zone may spill to
+	private static final int SPILL_ZONES = 2;
+	// Interval in ms between each time the servers are discovered from the registry
+	private static final long DISCOVERY_INTERVAL = 1000;
+	// Queue length given to servers that can not be reached, so they are avoided
+	private static final int UNREACHABLE_QUEUE_LENGTH = Integer.MAX_VALUE;
+
+	private final Map<String, Integer> serverQueueLength;
+	private final Map<String, Integer> serverAccessCount;
+	private volatile Topology topology;
+	private volatile HashRing hashRing;
+
+	private final Map<Integer, ZoneMetrics> zoneMetrics;
 
 	private final Registry registry;
+	private final String routingStrategy;
+	private final TraceWriter traceWriter;
 	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private final ScheduledExecutorService discoveryScheduler = Executors.newSingleThreadScheduledExecutor();
 
 	/**
 	 * Constructs a proxy object
-	 * Initializes the registry, sets the server names, and get their initial queue lengths
+	 * Initializes the registry, discovers the servers, and get their initial queue lengths
+	 * @param registry - the registry the servers are bound to
+	 * @param routingStrategy - "nearest" to spill requests from overloaded zones to the next zones, "hash" to spill them
+	 * to the zone owning the request key on a consistent-hash ring, or "local" to always use the local zone
 	 * @throws RemoteException if remote error occurs
 	 */
-	public Proxy() throws RemoteException {
+	public Proxy(Registry registry, String routingStrategy) throws RemoteException {
+		this(registry, routingStrategy, null);
+	}
+
+	/**
+	 * Constructs a proxy object which records its routing decisions to a trace
+	 * @param registry - the registry the servers are bound to
+	 * @param routingStrategy - the routing strategy of the proxy
+	 * @param traceWriter - the trace to record each routed request to, or null
+	 * @throws RemoteException if remote error occurs
+	 */
+	public Proxy(Registry registry, String routingStrategy, TraceWriter traceWriter) throws RemoteException {
 		super();
 
-		this.registry = LocateRegistry.getRegistry();
+		this.registry = registry;
+		this.routingStrategy = routingStrategy;
+		this.traceWriter = traceWriter;
 
-		serverNames = new HashMap<>();
-		serverQueueLength = new HashMap<>();
-		serverAccessCount = new HashMap<>();
+		serverQueueLength = new ConcurrentHashMap<>();
+		serverAccessCount = new ConcurrentHashMap<>();
+		zoneMetrics = new ConcurrentSkipListMap<>();
 
-		for (int i = 1; i <= 5; i++) {
-			serverNames.put(i, "Server zone "+i);
-			fetchServerQueueLength(i);
-		}
+		topology = new Topology(Collections.emptyMap());
+		hashRing = new HashRing(Collections.emptyList());
+		discoverServers();
+		discoveryScheduler.scheduleAtFixedRate(this::discoverServers, DISCOVERY_INTERVAL, DISCOVERY_INTERVAL, TimeUnit.MILLISECONDS);
 	}
 
 	/**
@@ -47,88 +93,414 @@ public class Proxy extends UnicastRemoteObject implements ProxyInterface {
 	 */
 	public static void main(String[] args) throws java.rmi.AlreadyBoundException {
 		try {
-			Registry registry = LocateRegistry.getRegistry();
+			int metricsPort = 0;
+			String routingStrategy = "nearest";
+			String traceFile = null;
 
-			Proxy proxy = new Proxy();
+			// Parse command-line arguments
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("--metrics-port") && i + 1 < args.length) {
+					metricsPort = Integer.parseInt(args[i + 1]);
+				}
+				if (args[i].equals("--routing") && i + 1 < args.length) {
+					routingStrategy = args[i + 1];
+				}
+				if (args[i].equals("--trace") && i + 1 < args.length) {
+					traceFile = args[i + 1];
+				}
+			}
 
-			// Unexport proxy if already exported
-			try {
-				UnicastRemoteObject.unexportObject(proxy, true);
-			} catch (Exception e) {}
+			Registry registry = LocateRegistry.getRegistry();
+
+			Proxy proxy = start(registry, routingStrategy, (traceFile == null) ? null : new TraceWriter(traceFile));
+			// Flush the trace when the proxy is stopped
+			Runtime.getRuntime().addShutdownHook(new Thread(proxy::shutdown));
 
-			// Export proxy and bind to the name 'Proxy' in the registry
-			ProxyInterface proxyStub = (ProxyInterface) UnicastRemoteObject.exportObject(proxy, 0);
-			registry.bind("Proxy", proxyStub);
+			// Expose the metrics over HTTP if enabled
+			if (metricsPort > 0) {
+				MetricsHttpServer.start(metricsPort, proxy::getMetricsText);
+			}
 
 			System.out.println("Proxy up and ready");
 
-		} catch (RemoteException | AlreadyBoundException e) {
+		} catch (IOException | AlreadyBoundException e) {
 			e.printStackTrace();
 		}
 	}
 
 	/**
-	 * Returns a reference to an available server in proximity to a given zone
+	 * Initializes a proxy object, exports it and binds it to the name 'Proxy' in the registry
+	 * @param registry - the registry the servers are bound to
+	 * @param routingStrategy - the routing strategy of the proxy
+	 * @return the proxy
+	 * @throws RemoteException if remote error occurs
+	 * @throws java.rmi.AlreadyBoundException if a proxy is already bound
+	 */
+	public static Proxy start(Registry registry, String routingStrategy) throws RemoteException, java.rmi.AlreadyBoundException {
+		return start(registry, routingStrategy, null);
+	}
+
+	/**
+	 * Initializes a proxy object recording its routing decisions, exports it and binds it to the name 'Proxy' in the registry
+	 * @param registry - the registry the servers are bound to
+	 * @param routingStrategy - the routing strategy of the proxy
+	 * @param traceWriter - the trace to record each routed request to, or null
+	 * @return the proxy
+	 * @throws RemoteException if remote error occurs
+	 * @throws java.rmi.AlreadyBoundException if a proxy is already bound
+	 */
+	public static Proxy start(Registry registry, String routingStrategy, TraceWriter traceWriter)
+			throws RemoteException, java.rmi.AlreadyBoundException {
+		Proxy proxy = new Proxy(registry, routingStrategy, traceWriter);
+
+		// Unexport proxy if already exported
+		try {
+			UnicastRemoteObject.unexportObject(proxy, true);
+		} catch (Exception e) {}
+
+		// Export proxy and bind to the name 'Proxy' in the registry
+		ProxyInterface proxyStub = (ProxyInterface) UnicastRemoteObject.exportObject(proxy, 0);
+		registry.bind("Proxy", proxyStub);
+
+		return proxy;
+	}
+
+	/**
+	 * Stops discovering servers and fetching queue lengths, closes the trace, unbinds the proxy and unexports it
+	 */
+	public void shutdown() {
+		discoveryScheduler.shutdownNow();
+		executor.shutdownNow();
+		if (traceWriter != null) {
+			traceWriter.close();
+		}
+		try {
+			registry.unbind("Proxy");
+		} catch (NotBoundException e) {
+			// Already unbound
+		} catch (Exception e) {
+			System.err.println("Error unbinding the proxy: " + e.getMessage());
+		}
+		try {
+			UnicastRemoteObject.unexportObject(this, true);
+		} catch (Exception e) {}
+	}
+
+	/**
+	 * Returns the zone of an available server in proximity to a given zone
 	 * @param zone - the zone the client requsts from
-	 * @return the available server interface
+	 * @return the zone of the available server
 	 * @throws RemoteException if a remote error occurs
 	 */
 	@Override
 	public Integer getAvailableServer(Integer zone) throws RemoteException {
-		Integer selectedZone = zone;
-
-		Integer localZoneQueueLength = serverQueueLength.get(zone);
-
-		// Consider the next 2 zones if the local zone is overloaded
-		if (localZoneQueueLength >= 18) {
-			int zone2 = (zone%5)+1;
-			int zone3 = ((zone+1)%5) + 1;
-			Integer zone2QueueLength = serverQueueLength.get(zone2);
-			Integer zone3QueueLength = serverQueueLength.get(zone3);
-
-			// Select zone with shortest queue if any of them are shorter than 18
-			if (zone2QueueLength < 18 || zone3QueueLength < 18) {
-				if (zone2QueueLength < zone3QueueLength) {
-					selectedZone = zone2;
-				} else {
-					selectedZone = zone3;
+		return ServerNames.parseZone(getAvailableServerName(zone));
+	}
+
+	/**
+	 * Returns the name of an available server replica in proximity to a given zone
+	 * @param zone - the zone the client requsts from
+	 * @return the name the server is bound to in the registry
+	 * @throws RemoteException if a remote error occurs
+	 */
+	@Override
+	public String getAvailableServerName(Integer zone) throws RemoteException {
+		return getAvailableServerName(zone, null);
+	}
+
+	/**
+	 * Returns the name of an available server replica in proximity to a given zone for a request.
+	 * With the "hash" routing strategy, requests that spill from an overloaded zone go to the zone owning their key,
+	 * so each spilled query is cached by one zone instead of all of them.
+	 * @param zone - the zone the client requsts from
+	 * @param requestKey - a key identifying the query independent of the zone, or null
+	 * @return the name the server is bound to in the registry
+	 * @throws RemoteException if a remote error occurs
+	 */
+	@Override
+	public String getAvailableServerName(Integer zone, String requestKey) throws RemoteException {
+		Topology currentTopology = topology;
+		String selectedServer;
+		if ("local".equals(routingStrategy) && !currentTopology.getReplicas(zone).isEmpty()) {
+			selectedServer = selectReplica(currentTopology.getReplicas(zone), serverQueueLength, serverAccessCount);
+		} else if ("hash".equals(routingStrategy) && requestKey != null) {
+			selectedServer = selectServerByKey(zone, requestKey, currentTopology, hashRing, serverQueueLength, serverAccessCount);
+		} else {
+			selectedServer = selectServer(zone, currentTopology, serverQueueLength, serverAccessCount);
+		}
+		if (selectedServer == null) {
+			throw new RemoteException("No servers are bound in the registry");
+		}
+
+		ZoneMetrics metrics = getZoneMetrics(zone);
+		metrics.routedRequests.increment();
+		if (ServerNames.parseZone(selectedServer) != zone) {
+			metrics.routedAwayRequests.increment();
+		}
+		updateServerAccessCount(selectedServer);
+
+		if (traceWriter != null) {
+			Object[] args = (requestKey == null) ? new Object[0] : new Object[] {requestKey};
+			traceWriter.write(new TraceRecord(TraceRecord.Type.ROUTE, System.currentTimeMillis(), zone, -1, selectedServer, "route", args, 0, 0));
+		}
+
+		return selectedServer;
+	}
+
+	/**
+	 * Selects the server to route a request from a given zone to, based on the known queue lengths.
+	 * The replica of the local zone with the shortest queue is used, unless it is overloaded and a replica
+	 * of one of the next zones in ring order is not.
+	 * @param zone - the zone the client requests from
+	 * @param topology - the replicas of each zone
+	 * @param serverQueueLength - the known queue length of each replica
+	 * @param serverAccessCount - the amount of requests routed to each replica since its queue length was fetched
+	 * @return the name of the selected server, or null if there are no servers
+	 */
+	static String selectServer(int zone, Topology topology, Map<String, Integer> serverQueueLength, Map<String, Integer> serverAccessCount) {
+		String localServer = selectReplica(topology.getReplicas(zone), serverQueueLength, serverAccessCount);
+		if (localServer != null && getQueueLength(localServer, serverQueueLength) < OVERLOAD_THRESHOLD) {
+			return localServer;
+		}
+
+		// Consider the best replica of the next zones if the local zone is overloaded or has no replicas
+		List<String> candidates = new ArrayList<>();
+		for (int neighbour : topology.getNeighbours(zone, SPILL_ZONES)) {
+			candidates.add(selectReplica(topology.getReplicas(neighbour), serverQueueLength, serverAccessCount));
+		}
+		String bestNeighbour = selectReplica(candidates, serverQueueLength, serverAccessCount);
+
+		if (localServer == null) {
+			return bestNeighbour;
+		}
+		if (bestNeighbour != null && getQueueLength(bestNeighbour, serverQueueLength) < OVERLOAD_THRESHOLD) {
+			return bestNeighbour;
+		}
+		return localServer;
+	}
+
+	/**
+	 * Selects the server to route a request from a given zone to, preferring the zone owning the request key
+	 * when the local zone is overloaded. Falls back to the next zones in ring order if the owner is overloaded too.
+	 * @param zone - the zone the client requests from
+	 * @param requestKey - a key identifying the query independent of the zone
+	 * @param topology - the replicas of each zone
+	 * @param hashRing - the ring giving the owner zone of each key
+	 * @param serverQueueLength - the known queue length of each replica
+	 * @param serverAccessCount - the amount of requests routed to each replica since its queue length was fetched
+	 * @return the name of the selected server, or null if there are no servers
+	 */
+	static String selectServerByKey(int zone, String requestKey, Topology topology, HashRing hashRing,
+			Map<String, Integer> serverQueueLength, Map<String, Integer> serverAccessCount) {
+		String localServer = selectReplica(topology.getReplicas(zone), serverQueueLength, serverAccessCount);
+		if (localServer != null && getQueueLength(localServer, serverQueueLength) < OVERLOAD_THRESHOLD) {
+			return localServer;
+		}
+
+		int ownerZone = hashRing.getOwner(requestKey, zone);
+		String ownerServer = (ownerZone == -1) ? null : selectReplica(topology.getReplicas(ownerZone), serverQueueLength, serverAccessCount);
+		if (ownerServer != null && getQueueLength(ownerServer, serverQueueLength) < OVERLOAD_THRESHOLD) {
+			return ownerServer;
+		}
+		return selectServer(zone, topology, serverQueueLength, serverAccessCount);
+	}
+
+	/**
+	 * Returns the server with the shortest known queue, or null if there are none.
+	 * Ties are broken by the amount of requests routed to the servers since their queue lengths were fetched,
+	 * so requests are spread over replicas with equal queues.
+	 * @param serverNames - the names of the servers to select from
+	 * @param serverQueueLength - the known queue length of each server
+	 * @param serverAccessCount - the amount of requests routed to each server since its queue length was fetched
+	 */
+	private static String selectReplica(List<String> serverNames, Map<String, Integer> serverQueueLength, Map<String, Integer> serverAccessCount) {
+		String selectedServer = null;
+		for (String serverName : serverNames) {
+			if (selectedServer == null) {
+				selectedServer = serverName;
+				continue;
+			}
+			int queueLength = getQueueLength(serverName, serverQueueLength);
+			int selectedQueueLength = getQueueLength(selectedServer, serverQueueLength);
+			if (queueLength < selectedQueueLength || (queueLength == selectedQueueLength
+					&& serverAccessCount.getOrDefault(serverName, 0) < serverAccessCount.getOrDefault(selectedServer, 0))) {
+				selectedServer = serverName;
+			}
+		}
+		return selectedServer;
+	}
+
+	private static int getQueueLength(String serverName, Map<String, Integer> serverQueueLength) {
+		return serverQueueLength.getOrDefault(serverName, 0);
+	}
+
+	/**
+	 * Returns the zone of the next best server for a given zone, other than the servers of an excluded zone
+	 * @param zone - the zone the client requests from
+	 * @param excludedZone - the zone already processing the request
+	 * @return the zone of the selected server
+	 * @throws RemoteException if a remote error occurs
+	 */
+	@Override
+	public Integer getAlternativeServer(Integer zone, Integer excludedZone) throws RemoteException {
+		String selectedServer = selectAlternative(zone, serverName -> ServerNames.parseZone(serverName) == excludedZone);
+		return (selectedServer == null) ? null : ServerNames.parseZone(selectedServer);
+	}
+
+	/**
+	 * Returns the next best server for a given zone, other than an excluded server.
+	 * Used by clients to send a duplicate of a slow request, or to retry a rejected request, at another server.
+	 * @param zone - the zone the client requests from
+	 * @param excludedServerName - the name of the server already processing the request
+	 * @return the name of the replica with the shortest queue among the local zone and the next zones, or null if there are none
+	 * @throws RemoteException if a remote error occurs
+	 */
+	@Override
+	public String getAlternativeServerName(Integer zone, String excludedServerName) throws RemoteException {
+		return selectAlternative(zone, excludedServerName::equals);
+	}
+
+	/**
+	 * Selects the replica with the shortest queue among the local zone and the next zones, other than excluded servers
+	 * @param zone - the zone the client requests from
+	 * @param excluded - returns true for the names of servers that should not be selected
+	 * @return the name of the selected server, or null if there are none
+	 */
+	private String selectAlternative(Integer zone, Predicate<String> excluded) {
+		Topology currentTopology = topology;
+		List<Integer> candidateZones = new ArrayList<>();
+		candidateZones.add(zone);
+		candidateZones.addAll(currentTopology.getNeighbours(zone, SPILL_ZONES));
+
+		List<String> candidates = new ArrayList<>();
+		for (int candidateZone : candidateZones) {
+			for (String serverName : currentTopology.getReplicas(candidateZone)) {
+				if (!excluded.test(serverName)) {
+					candidates.add(serverName);
 				}
 			}
 		}
+		String selectedServer = selectReplica(candidates, serverQueueLength, serverAccessCount);
 
-		updateServerAccessCount(selectedZone);
+		getZoneMetrics(zone).alternativeRequests.increment();
+		if (selectedServer != null) {
+			updateServerAccessCount(selectedServer);
+		}
 
-		return selectedZone;
+		return selectedServer;
 	}
 
 	/**
-	 * Updates the access count of server in a zone, and retrieves its queue length every 18th access
-	 * @param zone - zone of the server to access
+	 * {@inheritDoc}
 	 */
-	private void updateServerAccessCount(Integer zone) {
+	@Override
+	public String getMetrics() throws RemoteException {
+		return getMetricsText();
+	}
+
+	/**
+	 * Returns the metrics of all zones in the Prometheus text format
+	 */
+	private String getMetricsText() {
+		List<MetricsRegistry> registries = new ArrayList<>();
+		for (ZoneMetrics metrics : zoneMetrics.values()) {
+			registries.add(metrics.registry);
+		}
+		return MetricsRegistry.toPrometheus(registries);
+	}
+
+	/**
+	 * Returns the routing metrics of a zone, registering them the first time the zone is seen
+	 * @param zone - zone to get the metrics of
+	 */
+	private ZoneMetrics getZoneMetrics(Integer zone) {
+		return zoneMetrics.computeIfAbsent(zone, ZoneMetrics::new);
+	}
+
+	/**
+	 * Discovers the server replicas bound in the registry, and fetches the queue lengths of new replicas
+	 */
+	private void discoverServers() {
+		try {
+			Topology discoveredTopology = Topology.fromBindingNames(registry.list());
+			for (int zone : discoveredTopology.getZones()) {
+				getZoneMetrics(zone);
+				for (String serverName : discoveredTopology.getReplicas(zone)) {
+					if (!serverQueueLength.containsKey(serverName)) {
+						fetchServerQueueLength(serverName);
+					}
+				}
+			}
+			// Forget replicas that are no longer bound
+			serverQueueLength.keySet().removeIf(serverName -> !discoveredTopology.getReplicas(ServerNames.parseZone(serverName)).contains(serverName));
+
+			// Only rebuild the hash ring when zones are added or removed, so keys keep their owners
+			if (!discoveredTopology.getZones().equals(topology.getZones())) {
+				hashRing = new HashRing(discoveredTopology.getZones());
+			}
+			topology = discoveredTopology;
+		} catch (RemoteException e) {
+			System.out.print(e);
+		}
+	}
+
+	/**
+	 * Updates the access count of a server, and retrieves its queue length every 18th access
+	 * @param serverName - name of the server to access
+	 */
+	private void updateServerAccessCount(String serverName) {
 		// Update server access count by 1, if it is 18 reset it to 0
-		serverAccessCount.compute(zone, (k, accessCount) -> (accessCount == null ? 0 : accessCount + 1) % 18);
-		if (serverAccessCount.get(zone) == 0) {
+		int accessCount = serverAccessCount.compute(serverName, (k, count) -> (count == null ? 0 : count + 1) % 18);
+		if (accessCount == 0) {
 			// fetch the server queue length in another thread
-			executor.submit(() -> fetchServerQueueLength(zone));
+			executor.submit(() -> fetchServerQueueLength(serverName));
 		}
 	}
 
 	/**
-	 * fetches the specified server for their queue length, and then updates it in the serverQueueLength
-	 * @param zone - zone to get queue length from
+	 * fetches the specified server for their queue length, and then updates it in the serverQueueLength.
+	 * Servers that can not be reached are avoided until they respond again.
+	 * @param serverName - name of the server to get queue length from
 	 */
-	private void fetchServerQueueLength(Integer zone) {
+	private void fetchServerQueueLength(String serverName) {
 		try {
-			String serverName = serverNames.get(zone); 
 			ServerInterface server = (ServerInterface) registry.lookup(serverName);
 
 			int queueLength = server.getQueueLength();
 
-			serverQueueLength.put(zone, queueLength);
+			serverQueueLength.put(serverName, queueLength);
 		} catch (RemoteException | AlreadyBoundException | NotBoundException e) {
+			serverQueueLength.put(serverName, UNREACHABLE_QUEUE_LENGTH);
 			System.out.print(e);
 		}
 	}
 
-}
\ No newline at end of file
+	/**
+	 * The routing metrics of a zone
+	 */
+	private class ZoneMetrics {
+		final MetricsRegistry registry;
+		final LongAdder routedRequests;
+		final LongAdder routedAwayRequests;
+		final LongAdder alternativeRequests;
+
+		ZoneMetrics(Integer zone) {
+			registry = new MetricsRegistry("zone=\"" + zone + "\"");
+			routedRequests = registry.counter("proxy_routed_requests_total", "Requests routed for clients in the zone");
+			routedAwayRequests = registry.counter("proxy_routed_away_total", "Requests from the zone routed to another zone because it was overloaded");
+			alternativeRequests = registry.counter("proxy_alternative_requests_total", "Duplicate or retried requests from the zone routed to an alternative server");
+			registry.gauge("proxy_zone_replicas", "Amount of server replicas discovered in the zone", () -> topology.getReplicas(zone).size());
+			registry.gauge("proxy_known_queue_length", "Sum of the last fetched queue lengths of the replicas in the zone", () -> {
+				long queueLength = 0;
+				for (String serverName : topology.getReplicas(zone)) {
+					int replicaQueueLength = getQueueLength(serverName, serverQueueLength);
+					if (replicaQueueLength != UNREACHABLE_QUEUE_LENGTH) {
+						queueLength += replicaQueueLength;
+					}
+				}
+				return queueLength;
+			});
+		}
+	}
+
+}
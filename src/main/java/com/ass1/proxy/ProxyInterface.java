@@ -5,4 +5,9 @@ import java.rmi.RemoteException;
 
 public interface ProxyInterface extends Remote {
 	Integer getAvailableServer(Integer zone) throws RemoteException;
+	String getAvailableServerName(Integer zone) throws RemoteException;
+	String getAvailableServerName(Integer zone, String requestKey) throws RemoteException;
+	Integer getAlternativeServer(Integer zone, Integer excludedZone) throws RemoteException;
+	String getAlternativeServerName(Integer zone, String excludedServerName) throws RemoteException;
+	String getMetrics() throws RemoteException;
 }
\ No newline at end of file
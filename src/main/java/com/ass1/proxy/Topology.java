@@ -0,0 +1,70 @@
+package com.ass1.proxy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.ass1.server.ServerNames;
+
+/**
+ * The server replicas of each zone, as discovered from the names bound in the registry.
+ * Zones form a ring in the order of their numbers, where the neighbours of a zone are the zones after it.
+ */
+class Topology {
+	private final TreeMap<Integer, List<String>> replicas;
+
+	Topology(Map<Integer, List<String>> replicas) {
+		this.replicas = new TreeMap<>();
+		replicas.forEach((zone, serverNames) -> this.replicas.put(zone, Collections.unmodifiableList(new ArrayList<>(serverNames))));
+	}
+
+	/**
+	 * Creates the topology of the servers bound in a registry
+	 * @param boundNames the names bound in the registry
+	 * @return the topology
+	 */
+	static Topology fromBindingNames(String[] boundNames) {
+		Map<Integer, List<String>> replicas = new TreeMap<>();
+		for (String boundName : boundNames) {
+			int zone = ServerNames.parseZone(boundName);
+			if (zone > 0) {
+				replicas.computeIfAbsent(zone, k -> new ArrayList<>()).add(boundName);
+			}
+		}
+		replicas.values().forEach(Collections::sort);
+		return new Topology(replicas);
+	}
+
+	/**
+	 * Returns the zones with at least one replica, in ring order
+	 */
+	Set<Integer> getZones() {
+		return replicas.keySet();
+	}
+
+	/**
+	 * Returns the names of the replicas of a zone, or an empty list if the zone has none
+	 */
+	List<String> getReplicas(int zone) {
+		return replicas.getOrDefault(zone, Collections.emptyList());
+	}
+
+	/**
+	 * Returns the zones following a zone in ring order, not including the zone itself
+	 * @param zone the zone to get the neighbours of, which does not need to have replicas
+	 * @param count the max amount of neighbours
+	 */
+	List<Integer> getNeighbours(int zone, int count) {
+		List<Integer> neighbours = new ArrayList<>();
+		for (int neighbour : replicas.tailMap(zone, false).keySet()) {
+			neighbours.add(neighbour);
+		}
+		for (int neighbour : replicas.headMap(zone, false).keySet()) {
+			neighbours.add(neighbour);
+		}
+		return neighbours.subList(0, Math.min(count, neighbours.size()));
+	}
+}
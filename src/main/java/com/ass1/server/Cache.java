@@ -0,0 +1,293 @@
+package com.ass1.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simple cache with a max amount of entries, removing the oldest entry when full.
+ * Each entry records the countries its result depends on, or that it depends on all countries,
+ * so an update of a country only removes the entries depending on it.
+ * Results computed from data older than the last update of their countries are not stored,
+ * so requests that were in flight during an update can not put stale results back into the cache.
+ * The amount of times each entry has been used is counted, so the hottest entries can be saved and restored.
+ *
+ * The capacity can be changed while running. To estimate the effect of a change, the cache counts
+ * the hits on its oldest entries, which would be lost if it shrank by MARGIN entries, and keeps the keys of
+ * recently evicted entries as ghost entries, counting the misses that would be hits if it grew by MARGIN entries.
+ */
+class Cache extends LinkedHashMap<String, Integer> {
+    // Amount of entries the cache is expected to shrink or grow by, and that marginal hits are counted for
+    static final int MARGIN = 15;
+
+    private int cacheSize;
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder stalePuts = new LongAdder();
+    private final LongAdder tailHits = new LongAdder();
+    private final LongAdder ghostHits = new LongAdder();
+
+    // Keys of the most recently evicted entries, oldest first
+    private final Set<String> ghostKeys = new LinkedHashSet<>();
+
+    // The countries each entry depends on, or null if it depends on all countries
+    private final Map<String, Set<String>> entryDependencies = new HashMap<>();
+    private final Map<String, Set<String>> keysByCountry = new HashMap<>();
+    private final Set<String> keysDependingOnAllCountries = new HashSet<>();
+
+    // The data version of the last update of each country, and of any country
+    private final Map<String, Long> countryUpdateVersions = new HashMap<>();
+    private long lastUpdateVersion = 0;
+
+    // The amount of requests that used each entry, counting the request that stored it and each hit
+    private final Map<String, Integer> accessCounts = new HashMap<>();
+
+    public Cache(int cacheSize) {
+        super(cacheSize+1, 1.0f, true);
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Stores the result of a request, unless it was computed from data that has since been updated
+     * @param requestKey key of the request
+     * @param result result of the request
+     * @param countryDependencies the countries the result depends on, or null if it depends on all countries
+     * @param dataVersion version of the data the result was computed from
+     * @return true if the result was stored
+     */
+    public boolean put(String requestKey, Integer result, Set<String> countryDependencies, long dataVersion) {
+        if (isStale(countryDependencies, dataVersion)) {
+            stalePuts.increment();
+            return false;
+        }
+
+        removeEntryData(requestKey);
+        ghostKeys.remove(requestKey);
+        // Storing a new entry counts as the access of the request that computed it, while the request
+        // replacing a stored entry was already counted when it was looked up
+        accessCounts.putIfAbsent(requestKey, 1);
+        entryDependencies.put(requestKey, countryDependencies);
+        if (countryDependencies == null) {
+            keysDependingOnAllCountries.add(requestKey);
+        } else {
+            for (String countryName : countryDependencies) {
+                keysByCountry.computeIfAbsent(countryName, k -> new HashSet<>()).add(requestKey);
+            }
+        }
+        super.put(requestKey, result);
+        return true;
+    }
+
+    /**
+     * Stores a result without known dependencies, so it is treated as depending on all countries
+     * and removed by any update
+     * @param requestKey key of the request
+     * @param result result of the request
+     * @return the previous result of the request, or null if it was not stored
+     */
+    @Override
+    public Integer put(String requestKey, Integer result) {
+        Integer previousResult = containsKey(requestKey) ? super.get(requestKey) : null;
+        put(requestKey, result, null, lastUpdateVersion);
+        return previousResult;
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends Integer> results) {
+        results.forEach(this::put);
+    }
+
+    /**
+     * Removes the entries that depend on the data of the given countries, including all entries
+     * depending on every country, and records the update so older results of those countries are not stored
+     * @param countryNames the countries that changed
+     * @param dataVersion version of the data after the update
+     * @return the amount of removed entries
+     */
+    public int invalidateCountries(Set<String> countryNames, long dataVersion) {
+        lastUpdateVersion = Math.max(lastUpdateVersion, dataVersion);
+
+        List<String> invalidKeys = new ArrayList<>(keysDependingOnAllCountries);
+        for (String countryName : countryNames) {
+            countryUpdateVersions.merge(countryName, dataVersion, Math::max);
+            invalidKeys.addAll(keysByCountry.getOrDefault(countryName, Set.of()));
+        }
+
+        int removed = 0;
+        for (String requestKey : invalidKeys) {
+            if (remove(requestKey) != null) {
+                removed++;
+            }
+            removeEntryData(requestKey);
+        }
+        return removed;
+    }
+
+    private boolean isStale(Set<String> countryDependencies, long dataVersion) {
+        if (countryDependencies == null) {
+            return dataVersion < lastUpdateVersion;
+        }
+        for (String countryName : countryDependencies) {
+            if (dataVersion < countryUpdateVersions.getOrDefault(countryName, 0L)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Integer get(Object key) {
+        if (isInTail(key)) {
+            tailHits.increment();
+        }
+        Integer result = super.get(key);
+        if (result != null) {
+            accessCounts.merge((String) key, 1, Integer::sum);
+        } else if (ghostKeys.remove(key)) {
+            ghostHits.increment();
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the entry of a key would be evicted if the cache shrank by MARGIN entries
+     */
+    private boolean isInTail(Object key) {
+        int tailLength = size() - (cacheSize - MARGIN);
+        if (tailLength <= 0 || !containsKey(key)) {
+            return false;
+        }
+        // Entries are ordered from least to most recently used
+        Iterator<String> keys = keySet().iterator();
+        for (int i = 0; i < tailLength && keys.hasNext(); i++) {
+            if (keys.next().equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Changes the max amount of entries, evicting the least recently used entries if the cache is shrunk
+     * @param capacity the new max amount of entries
+     */
+    public void setCapacity(int capacity) {
+        this.cacheSize = capacity;
+        Iterator<String> keys = keySet().iterator();
+        while (size() > cacheSize && keys.hasNext()) {
+            String requestKey = keys.next();
+            keys.remove();
+            evict(requestKey);
+        }
+    }
+
+    /**
+     * Sets the access count of an entry, used when restoring entries with their previous counts
+     * @param requestKey key of the entry
+     * @param accessCount the amount of times the entry has been used
+     */
+    public void setAccessCount(String requestKey, int accessCount) {
+        if (containsKey(requestKey)) {
+            accessCounts.put(requestKey, accessCount);
+        }
+    }
+
+    /**
+     * Returns the keys of the entries with the amount of times they have been used, most used first
+     */
+    public Map<String, Integer> getAccessCounts() {
+        Map<String, Integer> sortedCounts = new LinkedHashMap<>();
+        accessCounts.entrySet().stream()
+            .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+            .forEach(entry -> sortedCounts.put(entry.getKey(), entry.getValue()));
+        return sortedCounts;
+    }
+
+    /**
+     * Returns the max amount of entries in the cache
+     */
+    public int getCapacity() {
+        return cacheSize;
+    }
+
+    /**
+     * Returns the amount of hits on entries that would have been evicted if the cache was MARGIN entries smaller
+     */
+    public long getTailHitCount() {
+        return tailHits.sum();
+    }
+
+    /**
+     * Returns the amount of misses on recently evicted entries, that would have been hits
+     * if the cache was MARGIN entries larger
+     */
+    public long getGhostHitCount() {
+        return ghostHits.sum();
+    }
+
+    private void removeEntryData(String requestKey) {
+        // The count is kept while the entry is replaced, so it is only removed with the entry
+        if (!containsKey(requestKey)) {
+            accessCounts.remove(requestKey);
+        }
+        if (!entryDependencies.containsKey(requestKey)) {
+            return;
+        }
+        Set<String> countryDependencies = entryDependencies.remove(requestKey);
+        if (countryDependencies == null) {
+            keysDependingOnAllCountries.remove(requestKey);
+            return;
+        }
+        for (String countryName : countryDependencies) {
+            Set<String> keys = keysByCountry.get(countryName);
+            if (keys != null) {
+                keys.remove(requestKey);
+                if (keys.isEmpty()) {
+                    keysByCountry.remove(countryName);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+        if (size() > cacheSize) {
+            evict(eldest.getKey());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the data of an evicted entry, and remembers its key as a ghost entry
+     */
+    private void evict(String requestKey) {
+        evictions.increment();
+        accessCounts.remove(requestKey);
+        removeEntryData(requestKey);
+
+        ghostKeys.add(requestKey);
+        if (ghostKeys.size() > MARGIN) {
+            Iterator<String> oldestGhost = ghostKeys.iterator();
+            oldestGhost.next();
+            oldestGhost.remove();
+        }
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the amount of results that were not stored because their data had been updated
+     */
+    public long getStalePutCount() {
+        return stalePuts.sum();
+    }
+}
@@ -0,0 +1,101 @@
+package com.ass1.server;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares a total amount of cache entries between the caches of the zones in a JVM.
+ * Periodically moves Cache.MARGIN entries from the cache that would lose the fewest hits by shrinking
+ * to the cache that would gain the most hits by growing, based on the marginal hits each cache counted since the last move.
+ */
+class CacheBudget {
+    // Interval in ms between each time capacity may be moved between the caches
+    private static final long REBALANCE_INTERVAL = 2000;
+    // Smallest capacity a cache is shrunk to
+    private static final int MIN_CAPACITY = Cache.MARGIN;
+
+    private final List<Cache> caches;
+    private final long[] lastTailHits;
+    private final long[] lastGhostHits;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cache-budget");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructs a budget for caches that already share the total amount of entries between them
+     * @param caches the caches of the zones, each guarded by synchronizing on it
+     */
+    CacheBudget(List<Cache> caches) {
+        this.caches = caches;
+        this.lastTailHits = new long[caches.size()];
+        this.lastGhostHits = new long[caches.size()];
+    }
+
+    /**
+     * Starts moving capacity between the caches periodically
+     */
+    void start() {
+        scheduler.scheduleAtFixedRate(this::rebalance, REBALANCE_INTERVAL, REBALANCE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Moves capacity from the cache with the lowest marginal loss to the cache with the highest marginal gain,
+     * if the gain is larger than the loss
+     */
+    void rebalance() {
+        long[] gains = new long[caches.size()];
+        long[] losses = new long[caches.size()];
+        for (int i = 0; i < caches.size(); i++) {
+            Cache cache = caches.get(i);
+            long tailHits = cache.getTailHitCount();
+            long ghostHits = cache.getGhostHitCount();
+            losses[i] = tailHits - lastTailHits[i];
+            gains[i] = ghostHits - lastGhostHits[i];
+            lastTailHits[i] = tailHits;
+            lastGhostHits[i] = ghostHits;
+        }
+
+        int receiver = 0;
+        for (int i = 1; i < caches.size(); i++) {
+            if (gains[i] > gains[receiver]) {
+                receiver = i;
+            }
+        }
+
+        int donor = -1;
+        for (int i = 0; i < caches.size(); i++) {
+            if (i == receiver || getCapacity(caches.get(i)) - Cache.MARGIN < MIN_CAPACITY) {
+                continue;
+            }
+            if (donor == -1 || losses[i] < losses[donor]) {
+                donor = i;
+            }
+        }
+
+        if (donor == -1 || gains[receiver] <= losses[donor]) {
+            return;
+        }
+        resize(caches.get(donor), -Cache.MARGIN);
+        resize(caches.get(receiver), Cache.MARGIN);
+    }
+
+    private static int getCapacity(Cache cache) {
+        synchronized (cache) {
+            return cache.getCapacity();
+        }
+    }
+
+    private static void resize(Cache cache, int change) {
+        synchronized (cache) {
+            cache.setCapacity(cache.getCapacity() + change);
+        }
+    }
+}
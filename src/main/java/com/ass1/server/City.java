@@ -0,0 +1,34 @@
+package com.ass1.server;
+
+/**
+ * Represents a city with geographical and demographic data.
+ */
+class City {
+    int geonameId;
+    String name;
+    String countryCode;
+    String countryName;
+    int population;
+    String timezone;
+    String coordinates;
+
+    /**
+     * Constructs a city instance with provided details.
+     * @param geonameId Unique identifier for the city.
+     * @param name Name of the city.
+     * @param countryCode ISO country code.
+     * @param countryName Full country name.
+     * @param population Population of the city.
+     * @param timezone Timezone of the city.
+     * @param coordinates Geographical coordinates of the city.
+     */
+    public City(int geonameId, String name, String countryCode, String countryName, int population, String timezone, String coordinates) {
+        this.geonameId = geonameId;
+        this.name = name;
+        this.countryCode = countryCode;
+        this.countryName = countryName;
+        this.population = population;
+        this.timezone = timezone;
+        this.coordinates = coordinates;
+    }
+}
@@ -0,0 +1,359 @@
+package com.ass1.server;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The city data of a server zone organized by country names, and the queries over it.
+ * An index is never modified after it is created. Updates create a new index with a higher version,
+ * which shares the data of all countries that were not changed, so readers never have to wait for updates.
+ *
+ * Queries over all countries are split into partitions of countries with about the same amount of cities,
+ * which are counted in parallel in the common fork-join pool when the index has at least
+ * the parallel threshold of cities, and sequentially otherwise.
+ */
+class CityIndex {
+    // Amount of cities counted by a single task when counting in parallel
+    private static final long PARALLEL_PARTITION_CITIES = 50_000;
+    // Default amount of cities from which queries over all countries are counted in parallel
+    static final long DEFAULT_PARALLEL_THRESHOLD = 1_000_000;
+
+    private final Map<String, Country> countries;
+    private final long version;
+    // Amount of cities from which queries over all countries are counted in parallel
+    private final long parallelThreshold;
+
+    // The countries in a fixed order, and the total amount of cities of the countries before each of them
+    private final Country[] countryArray;
+    private final long[] citiesBefore;
+
+    private CityIndex(Map<String, Country> countries, long version, long parallelThreshold) {
+        this.countries = countries;
+        this.version = version;
+        this.parallelThreshold = parallelThreshold;
+
+        this.countryArray = countries.values().toArray(new Country[0]);
+        this.citiesBefore = new long[countryArray.length + 1];
+        for (int i = 0; i < countryArray.length; i++) {
+            citiesBefore[i + 1] = citiesBefore[i] + countryArray[i].populations.length;
+        }
+    }
+
+    /**
+     * Returns an index with the same data, counting queries over all countries in parallel from another amount of cities.
+     * Indexes created by applying updates to the returned index keep its threshold.
+     * @param threshold the amount of cities, 0 to always count in parallel or Long.MAX_VALUE to never do it
+     * @return the index with the threshold
+     */
+    CityIndex withParallelThreshold(long threshold) {
+        return new CityIndex(countries, version, threshold);
+    }
+
+    /**
+     * Loads city data from a CSV file and stores it in a map organized by country names.
+     * @return the loaded city index
+     */
+    static CityIndex loadFromCSV() throws IOException {
+        List<City> cities = new ArrayList<>();
+        try {
+            InputStream inputStream = CityIndex.class.getClassLoader().getResourceAsStream("com/ass1/server/data/exercise_1_dataset.csv");
+            if (inputStream == null) {
+                throw new FileNotFoundException("Cannot find exercise_1_dataset.csv");
+            }
+            BufferedReader br = new BufferedReader(new InputStreamReader(inputStream));
+            String line;
+            br.readLine(); // Skip header line
+            while ((line = br.readLine()) != null) {
+                String[] fields = line.split(";");
+                // Ensure that the split line has all required fields
+                if (fields.length >= 7) {
+                    City city = new City(
+                        Integer.parseInt(fields[0]), fields[1], fields[2], fields[3],
+                        Integer.parseInt(fields[4]), fields[5], fields[6]
+                    );
+                    cities.add(city);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error loading CSV: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return fromCities(cities);
+    }
+
+    /**
+     * Creates an index of cities organized by their country names
+     * @param cities the cities to index
+     * @return the city index
+     */
+    static CityIndex fromCities(List<City> cities) {
+        Map<String, List<City>> citiesByCountry = new HashMap<>();
+        for (City city : cities) {
+            citiesByCountry.computeIfAbsent(city.countryName, k -> new ArrayList<>()).add(city);
+        }
+
+        Map<String, Country> countries = new HashMap<>();
+        citiesByCountry.forEach((countryName, countryCities) -> countries.put(countryName, new Country(countryCities)));
+        return new CityIndex(countries, 0, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Creates an index of generated cities, for measuring queries over datasets larger than the bundled one.
+     * Country sizes are skewed like in the real data, and populations are spread from 1 to 10 million.
+     * @param cityCount the amount of cities
+     * @param countryCount the amount of countries
+     * @param seed the seed of the generated data
+     * @return the generated city index
+     */
+    static CityIndex synthetic(int cityCount, int countryCount, long seed) {
+        Random random = new Random(seed);
+
+        // Country i gets a share of the cities proportional to 1 / (i + 1)
+        double totalWeight = 0;
+        for (int i = 0; i < countryCount; i++) {
+            totalWeight += 1.0 / (i + 1);
+        }
+
+        Map<String, Country> countries = new HashMap<>();
+        int geonameId = 0;
+        for (int i = 0; i < countryCount; i++) {
+            String countryName = "Country " + i;
+            int countryCities = (i == countryCount - 1) ? cityCount - geonameId
+                : Math.max(1, (int) (cityCount / totalWeight / (i + 1)));
+            countryCities = Math.min(countryCities, cityCount - geonameId);
+            if (countryCities <= 0) {
+                break;
+            }
+
+            List<City> cities = new ArrayList<>(countryCities);
+            for (int j = 0; j < countryCities; j++) {
+                int population = (int) Math.pow(10, random.nextDouble() * 7);
+                cities.add(new City(geonameId++, "City", "XX", countryName, population, "UTC", "0,0"));
+            }
+            countries.put(countryName, new Country(cities));
+        }
+        return new CityIndex(countries, 0, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Returns a new index with a batch of updates applied, leaving this index unchanged.
+     * Only the countries touched by the updates are copied, and their population totals are
+     * adjusted by the changes instead of being summed again. The cities of each touched country are looked up
+     * by their geoname ids in a map built once for the batch, so each update takes constant time.
+     * @param updates the updates to apply, in order
+     * @return the updated index, with the version incremented by one
+     */
+    CityIndex applyUpdates(List<CityUpdate> updates) {
+        // Group the updates by country, keeping their order
+        Map<String, List<CityUpdate>> updatesByCountry = new LinkedHashMap<>();
+        for (CityUpdate update : updates) {
+            updatesByCountry.computeIfAbsent(update.getCountryName(), k -> new ArrayList<>()).add(update);
+        }
+
+        Map<String, Country> updatedCountries = new HashMap<>(countries);
+        updatesByCountry.forEach((countryName, countryUpdates) -> {
+            Country country = countries.get(countryName);
+            List<City> cities = (country == null) ? new ArrayList<>() : new ArrayList<>(country.cities);
+            long population = (country == null) ? 0 : country.population;
+            Map<Integer, Integer> cityIndexes = new HashMap<>();
+            for (int i = 0; i < cities.size(); i++) {
+                cityIndexes.put(cities.get(i).geonameId, i);
+            }
+
+            for (CityUpdate update : countryUpdates) {
+                int index = cityIndexes.getOrDefault(update.getGeonameId(), -1);
+                switch (update.getType()) {
+                    case ADD -> {
+                        if (index == -1) {
+                            cityIndexes.put(update.getGeonameId(), cities.size());
+                            cities.add(update.toCity());
+                            population += update.getPopulation();
+                        }
+                    }
+                    case REMOVE -> {
+                        if (index != -1) {
+                            // Move the last city into the place of the removed one, so no other index changes
+                            City removed = cities.get(index);
+                            City last = cities.remove(cities.size() - 1);
+                            if (last != removed) {
+                                cities.set(index, last);
+                                cityIndexes.put(last.geonameId, index);
+                            }
+                            cityIndexes.remove(removed.geonameId);
+                            population -= removed.population;
+                        }
+                    }
+                    case UPDATE_POPULATION -> {
+                        if (index != -1) {
+                            City city = cities.get(index);
+                            population += update.getPopulation() - city.population;
+                            cities.set(index, new City(city.geonameId, city.name, city.countryCode, city.countryName,
+                                update.getPopulation(), city.timezone, city.coordinates));
+                        }
+                    }
+                }
+            }
+
+            if (cities.isEmpty()) {
+                updatedCountries.remove(countryName);
+            } else {
+                updatedCountries.put(countryName, new Country(cities, population));
+            }
+        });
+        return new CityIndex(updatedCountries, version + 1, parallelThreshold);
+    }
+
+    /**
+     * Returns the version of the index, which is 0 when loaded and incremented by every batch of updates
+     */
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the amount of countries in the index
+     */
+    int getCountryCount() {
+        return countries.size();
+    }
+
+    /** Returns the total population of a country */
+    int getPopulationOfCountry(String countryName) {
+        Country country = countries.get(countryName);
+        return (country == null) ? 0 : (int) country.population;
+    }
+
+    /** Returns the amount of cities in a country with at least minPopulation */
+    int getNumberOfCities(String countryName, int minPopulation) {
+        Country country = countries.get(countryName);
+        if (country == null) {
+            return 0;
+        }
+        int count = 0;
+        for (int population : country.populations) {
+            if (population >= minPopulation) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Returns the amount of countries with at least cityCount cities with at least minPopulation */
+    int getNumberOfCountries(int cityCount, int minPopulation) {
+        return getNumberOfCountries(cityCount, minPopulation, Integer.MAX_VALUE);
+    }
+
+    /** Returns the amount of countries with at least cityCount cities with a population between minPopulation and maxPopulation */
+    int getNumberOfCountries(int cityCount, int minPopulation, int maxPopulation) {
+        if (citiesBefore[countryArray.length] < parallelThreshold) {
+            return countCountries(0, countryArray.length, cityCount, minPopulation, maxPopulation);
+        }
+        return ForkJoinPool.commonPool().invoke(
+            new CountCountriesTask(0, countryArray.length, cityCount, minPopulation, maxPopulation));
+    }
+
+    /**
+     * Counts the countries in a range of the country array with at least cityCount cities with a population
+     * between minPopulation and maxPopulation
+     */
+    private int countCountries(int from, int to, int cityCount, int minPopulation, int maxPopulation) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (hasCities(countryArray[i], cityCount, minPopulation, maxPopulation)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns true if a country has at least cityCount cities with a population between minPopulation and maxPopulation,
+     * stopping as soon as enough cities are found
+     */
+    private static boolean hasCities(Country country, int cityCount, int minPopulation, int maxPopulation) {
+        if (cityCount <= 0) {
+            return true;
+        }
+        int found = 0;
+        for (int population : country.populations) {
+            if (population >= minPopulation && population <= maxPopulation && ++found >= cityCount) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts the countries of a range of the country array, splitting it in two ranges with about
+     * the same amount of cities until the ranges are small enough to count sequentially
+     */
+    private class CountCountriesTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int cityCount;
+        private final int minPopulation;
+        private final int maxPopulation;
+
+        CountCountriesTask(int from, int to, int cityCount, int minPopulation, int maxPopulation) {
+            this.from = from;
+            this.to = to;
+            this.cityCount = cityCount;
+            this.minPopulation = minPopulation;
+            this.maxPopulation = maxPopulation;
+        }
+
+        @Override
+        protected Integer compute() {
+            long cities = citiesBefore[to] - citiesBefore[from];
+            if (to - from <= 1 || cities <= PARALLEL_PARTITION_CITIES) {
+                return countCountries(from, to, cityCount, minPopulation, maxPopulation);
+            }
+
+            // Split where half of the cities of the range are before the split
+            int split = Arrays.binarySearch(citiesBefore, from, to + 1, citiesBefore[from] + cities / 2);
+            if (split < 0) {
+                split = -split - 1;
+            }
+            split = Math.max(from + 1, Math.min(to - 1, split));
+
+            CountCountriesTask left = new CountCountriesTask(from, split, cityCount, minPopulation, maxPopulation);
+            left.fork();
+            int rightCount = new CountCountriesTask(split, to, cityCount, minPopulation, maxPopulation).compute();
+            return left.join() + rightCount;
+        }
+    }
+
+    /**
+     * The cities of a country, their populations as a column for fast scans, and their total population
+     */
+    private static class Country {
+        final List<City> cities;
+        final int[] populations;
+        final long population;
+
+        Country(List<City> cities) {
+            this(cities, cities.stream().mapToLong(city -> city.population).sum());
+        }
+
+        Country(List<City> cities, long population) {
+            this.cities = Collections.unmodifiableList(cities);
+            this.populations = cities.stream().mapToInt(city -> city.population).toArray();
+            this.population = population;
+        }
+    }
+}
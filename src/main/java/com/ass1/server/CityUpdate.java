@@ -0,0 +1,79 @@
+package com.ass1.server;
+
+import java.io.Serializable;
+
+/**
+ * A single change to the city data of a server zone: adding a city, removing a city,
+ * or updating the population of a city. Cities are identified by their geoname id within their country.
+ */
+public class CityUpdate implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Type { ADD, REMOVE, UPDATE_POPULATION }
+
+    private final Type type;
+    private final int geonameId;
+    private final String countryName;
+    private final int population;
+    private final String name;
+    private final String countryCode;
+    private final String timezone;
+    private final String coordinates;
+
+    private CityUpdate(Type type, int geonameId, String countryName, int population,
+            String name, String countryCode, String timezone, String coordinates) {
+        this.type = type;
+        this.geonameId = geonameId;
+        this.countryName = countryName;
+        this.population = population;
+        this.name = name;
+        this.countryCode = countryCode;
+        this.timezone = timezone;
+        this.coordinates = coordinates;
+    }
+
+    /**
+     * Creates an update adding a city, which is ignored if the country already has a city with the geoname id
+     */
+    public static CityUpdate add(int geonameId, String name, String countryCode, String countryName,
+            int population, String timezone, String coordinates) {
+        return new CityUpdate(Type.ADD, geonameId, countryName, population, name, countryCode, timezone, coordinates);
+    }
+
+    /**
+     * Creates an update removing a city, which is ignored if the city does not exist
+     */
+    public static CityUpdate remove(int geonameId, String countryName) {
+        return new CityUpdate(Type.REMOVE, geonameId, countryName, 0, null, null, null, null);
+    }
+
+    /**
+     * Creates an update setting the population of a city, which is ignored if the city does not exist
+     */
+    public static CityUpdate updatePopulation(int geonameId, String countryName, int population) {
+        return new CityUpdate(Type.UPDATE_POPULATION, geonameId, countryName, population, null, null, null, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getGeonameId() {
+        return geonameId;
+    }
+
+    public String getCountryName() {
+        return countryName;
+    }
+
+    public int getPopulation() {
+        return population;
+    }
+
+    /**
+     * Returns the city added by an ADD update
+     */
+    City toCity() {
+        return new City(geonameId, name, countryCode, countryName, population, timezone, coordinates);
+    }
+}
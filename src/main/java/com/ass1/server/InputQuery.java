@@ -0,0 +1,113 @@
+package com.ass1.server;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A query from a client input file, e.g. exercise_1_input.txt, with the name of the server method to call
+ * and its typed arguments. Used to warm up the cache and to drive benchmarks with the real query mix.
+ */
+public class InputQuery {
+    private final String method;
+    private final Object[] args;
+    private final int zone;
+
+    public InputQuery(String method, Object[] args, int zone) {
+        this.method = method;
+        this.args = args;
+        this.zone = zone;
+    }
+
+    /**
+     * Parses an input file in the client format: <method name> <arg1> <arg2> <arg3> Zone:<zone number>.
+     * Lines without a zone or without arguments are skipped.
+     * @param inputFile path to the input file
+     * @return the queries in the order of the input file
+     * @throws IOException if the input file can not be read
+     */
+    public static List<InputQuery> load(String inputFile) throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(inputFile))) {
+            return parse(br);
+        }
+    }
+
+    /**
+     * Parses the client input file bundled on the classpath
+     * @return the queries in the order of the input file
+     * @throws IOException if the input file can not be read
+     */
+    public static List<InputQuery> loadBundled() throws IOException {
+        InputStream inputStream = InputQuery.class.getClassLoader().getResourceAsStream("com/ass1/client/data/exercise_1_input.txt");
+        if (inputStream == null) {
+            throw new FileNotFoundException("Cannot find exercise_1_input.txt");
+        }
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(inputStream))) {
+            return parse(br);
+        }
+    }
+
+    private static List<InputQuery> parse(BufferedReader br) throws IOException {
+        List<InputQuery> queries = new ArrayList<>();
+        String line;
+        while ((line = br.readLine()) != null) {
+            int zoneIndex = line.indexOf("Zone:");
+            if (zoneIndex == -1) {
+                continue;
+            }
+            int zone = Integer.parseInt(line.substring(zoneIndex + 5).trim());
+            String[] parts = line.substring(0, zoneIndex).trim().split(" ", 2);
+            if (parts.length < 2) {
+                continue;
+            }
+            String[] args = parts[1].split(" (?=\\d)");  // Splits by space before a number
+
+            switch (parts[0]) {
+                case "getPopulationofCountry" -> queries.add(new InputQuery("getPopulationOfCountry", new Object[] {args[0]}, zone));
+                case "getNumberofCities" -> queries.add(new InputQuery("getNumberOfCities", new Object[] {args[0], Integer.parseInt(args[1].trim())}, zone));
+                case "getNumberofCountries" -> {
+                    Object[] intArgs = new Object[args.length];
+                    for (int i = 0; i < args.length; i++) {
+                        intArgs[i] = Integer.parseInt(args[i].trim());
+                    }
+                    queries.add(new InputQuery("getNumberOfCountries", intArgs, zone));
+                }
+                default -> { }
+            }
+        }
+        return queries;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public Object[] getArgs() {
+        return args;
+    }
+
+    public int getZone() {
+        return zone;
+    }
+
+    /**
+     * Returns the key the server caches the query by, which clients also route the query by
+     */
+    public String getKey() {
+        return getKey(method, args);
+    }
+
+    /**
+     * Returns the key of a query of a server method, as the server caches it by and clients route it by
+     * @param method name of the server method, e.g. "getPopulationOfCountry"
+     * @param args arguments of the method
+     */
+    public static String getKey(String method, Object[] args) {
+        return Request.getRequestKey(method, args);
+    }
+}
@@ -0,0 +1,62 @@
+package com.ass1.server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The simulated network latency between a client zone and a server zone.
+ * By default requests from the same zone take 80 ms and requests from other zones 170 ms,
+ * and single zone pairs can be given their own latency.
+ */
+public class LatencyModel {
+    private final long localLatency;
+    private final long remoteLatency;
+    private final Map<String, Long> zonePairLatency = new HashMap<>();
+
+    public LatencyModel(long localLatency, long remoteLatency) {
+        this.localLatency = localLatency;
+        this.remoteLatency = remoteLatency;
+    }
+
+    /**
+     * Parses a latency specification, e.g. "local=80,remote=170,1-2=120".
+     * "local" and "remote" set the defaults, and "<client zone>-<server zone>" sets the latency for a single zone pair.
+     * @param spec the latency specification
+     * @return the latency model
+     */
+    public static LatencyModel parse(String spec) {
+        long localLatency = 80;
+        long remoteLatency = 170;
+        Map<String, Long> zonePairLatency = new HashMap<>();
+
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid latency entry: " + entry);
+            }
+            long latency = Long.parseLong(parts[1].trim());
+            switch (parts[0].trim()) {
+                case "local" -> localLatency = latency;
+                case "remote" -> remoteLatency = latency;
+                default -> zonePairLatency.put(parts[0].trim(), latency);
+            }
+        }
+
+        LatencyModel latencyModel = new LatencyModel(localLatency, remoteLatency);
+        latencyModel.zonePairLatency.putAll(zonePairLatency);
+        return latencyModel;
+    }
+
+    /**
+     * Returns the simulated network latency in ms for a request from a client zone to a server zone
+     * @param clientZone zone of the client
+     * @param serverZone zone of the server
+     */
+    public long getLatency(int clientZone, int serverZone) {
+        Long latency = zonePairLatency.get(clientZone + "-" + serverZone);
+        if (latency != null) {
+            return latency;
+        }
+        return (clientZone == serverZone) ? localLatency : remoteLatency;
+    }
+}
@@ -0,0 +1,141 @@
+package com.ass1.server;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A representation of a client request, including the time it was put into queue and a future for a reponse
+ */
+class Request {
+    private final String method;
+    private final Object[] args;
+    private final long queueTime;
+    private final CompletableFuture<Response> responseFuture;
+    private final int clientZone;
+    private final long requestId;
+
+    public Request(String method, Object[] args, int clientZone) {
+        this(method, args, clientZone, -1);
+    }
+
+    public Request(String method, Object[] args, int clientZone, long requestId) {
+        this.method = method;
+        this.args = args;
+        this.queueTime = System.currentTimeMillis();
+        this.responseFuture = new CompletableFuture<>();
+        this.clientZone = clientZone;
+        this.requestId = requestId;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public Object[] getArgs() {
+        return args;
+    }
+
+    public long getQueueTime() {
+        return queueTime;
+    }
+
+    public int getClientZone() {
+        return clientZone;
+    }
+
+    /**
+     * Returns the id the client gave the request, or -1 if it can not be cancelled
+     */
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public CompletableFuture<Response> getResponseFuture() {
+        return responseFuture;
+    }
+
+    /**
+     * Returns the countries the result of the request depends on, or null if it depends on all countries
+     */
+    public Set<String> getCountryDependencies() {
+        if ("getPopulationOfCountry".equals(method) || "getNumberOfCities".equals(method)) {
+            return Set.of((String) args[0]);
+        }
+        return null;
+    }
+
+    /**
+     * Returns a key for the request, including its arguments
+     */
+    public String getRequestKey() {
+        return getRequestKey(method, args);
+    }
+
+    /**
+     * Returns the key of a request of a server method, which identifies the request independent of the zone it is made from
+     * @param method name of the server method
+     * @param args arguments of the method
+     */
+    static String getRequestKey(String method, Object[] args) {
+        String[] argsAsString = Arrays.stream(args).map(Object::toString).toArray(String[]::new);
+        return method + ": " + String.join(",", argsAsString);
+    }
+
+    /**
+     * Returns true if a method is a server method and the arguments match its parameters,
+     * so a request of it can be computed
+     * @param method name of the server method
+     * @param args arguments of the method
+     */
+    public static boolean isValid(String method, Object[] args) {
+        if (method == null || args == null) {
+            return false;
+        }
+        return switch (method) {
+            case "getPopulationOfCountry" -> args.length == 1 && args[0] instanceof String;
+            case "getNumberOfCities" -> args.length == 2 && args[0] instanceof String && args[1] instanceof Integer;
+            case "getNumberOfCountries" -> (args.length == 2 || args.length == 3)
+                && Arrays.stream(args).allMatch(arg -> arg instanceof Integer);
+            default -> false;
+        };
+    }
+
+    /**
+     * Creates a request from a key created by getRequestKey
+     * @param requestKey key of the request
+     * @param clientZone zone the request is made from
+     * @return the request, or null if the key is not a valid request
+     */
+    public static Request fromKey(String requestKey, int clientZone) {
+        int separator = requestKey.indexOf(": ");
+        if (separator == -1) {
+            return null;
+        }
+        String method = requestKey.substring(0, separator);
+        String argString = requestKey.substring(separator + 2);
+
+        try {
+            switch (method) {
+                case "getPopulationOfCountry" -> {
+                    return new Request(method, new Object[] {argString}, clientZone);
+                }
+                case "getNumberOfCities" -> {
+                    // Country names may contain commas, so the population is after the last one
+                    int lastComma = argString.lastIndexOf(',');
+                    return new Request(method, new Object[] {argString.substring(0, lastComma),
+                        Integer.parseInt(argString.substring(lastComma + 1))}, clientZone);
+                }
+                case "getNumberOfCountries" -> {
+                    Object[] args = Arrays.stream(argString.split(",")).map(Integer::parseInt).toArray();
+                    return (args.length == 2 || args.length == 3) ? new Request(method, args, clientZone) : null;
+                }
+                default -> {
+                    return null;
+                }
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
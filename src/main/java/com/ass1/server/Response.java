@@ -7,12 +7,29 @@ public class Response implements Serializable {
     private final long executionTime;
     private final long waitingTime;
     private final int serverZone;
+    private final boolean rejected;
+    private final int retryZone;
 
     public Response(int result, long executionTime, long waitingTime, int serverZone) {
+        this(result, executionTime, waitingTime, serverZone, false, -1);
+    }
+
+    private Response(int result, long executionTime, long waitingTime, int serverZone, boolean rejected, int retryZone) {
         this.result = result;
         this.executionTime = executionTime;
         this.waitingTime = waitingTime;
         this.serverZone = serverZone;
+        this.rejected = rejected;
+        this.retryZone = retryZone;
+    }
+
+    /**
+     * Creates a response for a request the server did not admit to its waiting list
+     * @param serverZone zone of the server rejecting the request
+     * @param retryZone zone the client should retry at, or -1 if there is no hint
+     */
+    public static Response rejected(int serverZone, int retryZone) {
+        return new Response(-1, 0, 0, serverZone, true, retryZone);
     }
 
     public int getResult() {
@@ -30,4 +47,12 @@ public class Response implements Serializable {
     public int getServerZone() {
         return serverZone;
     }
-}
\ No newline at end of file
+
+    public boolean isRejected() {
+        return rejected;
+    }
+
+    public int getRetryZone() {
+        return retryZone;
+    }
+}
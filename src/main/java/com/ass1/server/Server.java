@@ -1,13 +1,15 @@
 package com.ass1.server;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.rmi.AlreadyBoundException;
+import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
@@ -16,48 +18,142 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ass1.metrics.Histogram;
+import com.ass1.metrics.MetricsHttpServer;
+import com.ass1.metrics.MetricsRegistry;
+import com.ass1.trace.TraceRecord;
+import com.ass1.trace.TraceWriter;
 
 /**
  * The Server class implements the ServerInterface and handles the processing
  * of statistical data related to geographical information stored in a CSV file.
  */
 public class Server extends UnicastRemoteObject implements ServerInterface {
+    // Cache capacity of each replica when the replicas do not share a cache budget
+    private static final int CACHE_SIZE = 150;
+    // Amount of zones after this one that rejected requests may be redirected to, as the proxy spills to
+    private static final int REDIRECT_ZONES = 2;
+    // Interval in ms between each time the queue lengths of the zones to redirect to are fetched
+    private static final long REDIRECT_REFRESH_INTERVAL = 500;
+
     private final int serverZone;
+    private final int replica;
+    private final int zoneCount;
     private final BlockingQueue<Request> waitingList;
     private final Cache cache;
     private final boolean cacheEnabled;
+    private final LatencyModel latencyModel;
+    private final boolean sleepingLatency;
+    private final int queueCapacity;
+    private final String admissionPolicy;
+    private final Object admissionLock = new Object();
     private final PrintWriter logWaitingListWriter;
-
-    
-    private final Map<String, List<City>> countries = new HashMap<>();
+    private final Path cacheSnapshotPath;
+    private CacheBudget cacheBudget;
+    private volatile Registry registry;
+    // Queue lengths of the first replicas of the other zones, as last fetched in the background
+    private volatile Map<Integer, Integer> zoneQueueLengths = Collections.emptyMap();
+    private ScheduledExecutorService redirectScheduler;
+    private volatile TraceWriter traceWriter;
+    private final ScheduledExecutorService latencyScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    private final MetricsRegistry metrics;
+    private final LongAdder enqueuedRequests;
+    private final LongAdder dequeuedRequests;
+    private final LongAdder rejectedRequests;
+    private final LongAdder cancelledRequests;
+    private final LongAdder cacheHits;
+    private final LongAdder cacheMisses;
+    private final LongAdder cacheInvalidations;
+    private final Histogram serviceTimeHistogram;
+    private final Histogram waitingTimeHistogram;
+    private volatile CityIndex cityIndex;
+    private final Object updateLock = new Object();
 
     /**
      * Constructs a Server object and initializes the country data from the CSV file.
+     * @param serverZone the zone of the server
+     * @param replica the number of the replica within the zone, starting at 1
+     * @param config the server configuration
+     * @throws RemoteException if a network issue occurs during RMI setup.
+     */
+    public Server(int serverZone, int replica, ServerConfig config) throws IOException {
+        this(serverZone, replica, config, CityIndex.loadFromCSV());
+    }
+
+    /**
+     * Constructs a Server object serving the given city data.
+     * @param serverZone the zone of the server
+     * @param replica the number of the replica within the zone, starting at 1
+     * @param config the server configuration
+     * @param cityIndex the city data to serve
      * @throws RemoteException if a network issue occurs during RMI setup.
      */
-    public Server(int serverZone, String cacheMode, int delay) throws IOException {
-        System.out.println("Initializing server zone " + serverZone + "...");
+    Server(int serverZone, int replica, ServerConfig config, CityIndex cityIndex) throws IOException {
+        String serverName = ServerNames.bindingName(serverZone, replica);
+        System.out.println("Initializing " + serverName + "...");
         
+        String cacheMode = config.getCacheMode();
+        int delay = config.getDelay();
+        int serverCount = config.getZonesToStart().size() * config.getReplicaCount();
+        String fileId = "server_zone_" + serverZone + (replica == 1 ? "" : "." + replica);
+
         this.serverZone = serverZone;
+        this.replica = replica;
+        this.zoneCount = config.getZoneCount();
         this.cacheEnabled = ("server".equals(cacheMode) || "client".equals(cacheMode));
+        this.latencyModel = config.getLatencyModel();
+        this.sleepingLatency = config.isSleepingLatency();
+        this.queueCapacity = config.getQueueCapacity();
+        this.admissionPolicy = config.getAdmissionPolicy();
         this.waitingList = new LinkedBlockingQueue<>();
-        this.cache = new Cache(150);
-
-        String fileName = "server_zone_"+serverZone+"_log_" + cacheMode + "_delay_" + delay + ".txt";
-        String filePath = Paths.get("output", fileName).toString();
+        this.cache = new Cache(config.getCacheBudget() > 0 ? config.getCacheBudget() / serverCount : CACHE_SIZE);
+
+        this.metrics = new MetricsRegistry("zone=\"" + serverZone + "\",replica=\"" + replica + "\"");
+        this.enqueuedRequests = metrics.counter("server_requests_enqueued_total", "Requests put into the waiting list");
+        this.dequeuedRequests = metrics.counter("server_requests_dequeued_total", "Requests taken from the waiting list by the worker");
+        this.rejectedRequests = metrics.counter("server_requests_rejected_total", "Requests rejected or shed by admission control");
+        this.cancelledRequests = metrics.counter("server_requests_cancelled_total", "Requests cancelled by the client while in the waiting list");
+        metrics.gauge("server_queue_depth", "Current amount of requests in the waiting list", waitingList::size);
+        this.serviceTimeHistogram = metrics.histogram("server_service_time_ms", "Execution time of requests, including the simulated network delay");
+        this.waitingTimeHistogram = metrics.histogram("server_waiting_time_ms", "Time requests spent in the waiting list");
+        this.cacheHits = metrics.counter("server_cache_hits_total", "Requests answered from the cache");
+        this.cacheMisses = metrics.counter("server_cache_misses_total", "Requests computed because they were not in the cache");
+        metrics.counter("server_cache_evictions_total", "Entries evicted from the cache", cache::getEvictionCount);
+        metrics.gauge("server_cache_size", "Current amount of entries in the cache", this::getCacheSize);
+        this.cacheInvalidations = metrics.counter("server_cache_invalidations_total", "Entries removed from the cache because the data they depend on was updated");
+        metrics.counter("server_cache_stale_puts_total", "Results not cached because the data they were computed from was updated", cache::getStalePutCount);
+        metrics.gauge("server_cache_capacity", "Current max amount of entries in the cache", this::getCacheCapacity);
+        metrics.doubleGauge("server_cache_hit_ratio", "Share of cache lookups answered from the cache", this::getCacheHitRatio);
+        metrics.counter("server_cache_tail_hits_total", "Cache hits that would be misses if the cache was " + Cache.MARGIN + " entries smaller", cache::getTailHitCount);
+        metrics.counter("server_cache_ghost_hits_total", "Cache misses that would be hits if the cache was " + Cache.MARGIN + " entries larger", cache::getGhostHitCount);
+        metrics.gauge("server_dataset_version", "Version of the city data, incremented by every batch of updates", () -> cityIndex.getVersion());
+
+        String fileName = fileId + "_log_" + cacheMode + "_delay_" + delay + ".txt";
+        String filePath = Paths.get(config.getLogDirectory(), fileName).toString();
 
         this.logWaitingListWriter = new PrintWriter(new FileWriter(filePath, true), false); //set false to overwrite previous file
+        this.cacheSnapshotPath = (config.getCacheSnapshotDirectory() == null) ? null
+            : Paths.get(config.getCacheSnapshotDirectory(), fileId + "_cache.snapshot");
 
-        loadCitiesFromCSV();
-        System.out.println("Loaded " + countries.size() + " countries.");
+        this.cityIndex = cityIndex.withParallelThreshold(config.getParallelThreshold());
+        System.out.println("Loaded " + cityIndex.getCountryCount() + " countries.");
 
-        startThreadExecutor();
+        startThreadExecutor(config.getWorkerCount());
     }
 
     /**
@@ -66,18 +162,8 @@ public class Server extends UnicastRemoteObject implements ServerInterface {
      */
     public static void main(String[] args){
         try {
-            String cacheMode = "naive";
-            int delay = 50;
-
             // Parse command-line arguments
-            for (int i = 0; i < args.length; i++) {
-                if (args[i].equals("--delay") && i + 1 < args.length) {
-                    delay = Integer.parseInt(args[i + 1]);
-                }
-                if (args[i].equals("--cache") && i + 1 < args.length) {
-                    cacheMode = args[i + 1];
-                }
-            }
+            ServerConfig config = ServerConfig.fromArgs(args);
             
             // Create or get the registry
             Registry registry;
@@ -86,81 +172,385 @@ public class Server extends UnicastRemoteObject implements ServerInterface {
             } catch (Exception e) {
                 registry = LocateRegistry.getRegistry();
             }
-            Server[] servers = new Server[5];
-
-            // For each server, export it and register it to the registry
-            for (int i = 0; i < servers.length; i++) {
-                servers[i] = new Server(i+1, cacheMode, delay);
-
-                // Unexport servers if already exported
-                try {
-                    UnicastRemoteObject.unexportObject(servers[i], true);
-                } catch (Exception e) {}
-                ServerInterface serverStub = (ServerInterface) UnicastRemoteObject.exportObject(servers[i], 0);
-                String serverName = "Server zone " + (i+1);
-                registry.bind(serverName, serverStub);
+            Server[] servers = startZones(registry, config);
+
+            // Shut down the zones when the JVM exits, saving their cache snapshots if enabled
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdownZones(servers)));
+
+            // Expose the metrics of all zones over HTTP if enabled
+            if (config.getMetricsPort() > 0) {
+                List<MetricsRegistry> registries = new ArrayList<>();
+                for (Server server : servers) {
+                    registries.add(server.metrics);
+                }
+                MetricsHttpServer.start(config.getMetricsPort(), () -> MetricsRegistry.toPrometheus(registries));
             }
 
-            System.out.println("Server up and ready with cache mode " + cacheMode);
+            System.out.println("Server up and ready with cache mode " + config.getCacheMode());
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * The thread that processes requests from the waiting list. 
+     * Creates the configured replicas of the configured zones, exports them and binds them to the registry.
+     * Each replica is bound to the first unused name of its zone, so replicas of the same zone
+     * can be started by several servers, e.g. in separate JVMs.
+     * The caches are filled from the warm-up trace before a replica is bound and from its cache snapshot
+     * right after it is bound, if enabled, so the first clients are served from a warm cache.
+     * The servers share a single trace, which is closed by shutdownZones.
+     * @param registry the registry to bind the servers to
+     * @param config the server configuration
+     * @return the servers, ordered by zone
+     * @throws Exception if a server can not be created or bound
+     */
+    public static Server[] startZones(Registry registry, ServerConfig config) throws Exception {
+        List<Server> servers = new ArrayList<>();
+        List<InputQuery> warmupQueries = (config.getWarmupTrace() == null) ? null : InputQuery.load(config.getWarmupTrace());
+        TraceWriter traceWriter = (config.getTraceFile() == null) ? null : new TraceWriter(config.getTraceFile());
+
+        // For each replica, export it and register it to the registry
+        for (int zone : config.getZonesToStart()) {
+            for (int i = 0; i < config.getReplicaCount(); i++) {
+                servers.add(startReplica(registry, config, zone, warmupQueries, traceWriter));
+            }
+        }
+
+        // Share the cache budget between the replicas, moving capacity to where it gives the most hits
+        if (config.getCacheBudget() > 0 && !servers.isEmpty() && servers.get(0).cacheEnabled) {
+            List<Cache> caches = new ArrayList<>();
+            for (Server server : servers) {
+                caches.add(server.cache);
+            }
+            CacheBudget cacheBudget = new CacheBudget(caches);
+            for (Server server : servers) {
+                server.cacheBudget = cacheBudget;
+            }
+            cacheBudget.start();
+        }
+        return servers.toArray(new Server[0]);
+    }
+
+    /**
+     * Creates a replica of a zone and binds it to the first unused name of the zone
+     * @param registry the registry to bind the replica to
+     * @param config the server configuration
+     * @param zone the zone of the replica
+     * @param warmupQueries the queries to warm up the cache with, or null
+     * @param traceWriter the trace to record requests to, or null
+     * @return the replica
+     * @throws Exception if the replica can not be created or bound
+     */
+    private static Server startReplica(Registry registry, ServerConfig config, int zone, List<InputQuery> warmupQueries,
+            TraceWriter traceWriter) throws Exception {
+        for (int replica = 1; ; replica++) {
+            String serverName = ServerNames.bindingName(zone, replica);
+            if (Arrays.asList(registry.list()).contains(serverName)) {
+                continue;
+            }
+
+            Server server = new Server(zone, replica, config);
+            if (warmupQueries != null) {
+                server.warmUpCache(warmupQueries);
+            }
+
+            // Unexport server if already exported
+            try {
+                UnicastRemoteObject.unexportObject(server, true);
+            } catch (Exception e) {}
+            ServerInterface serverStub = (ServerInterface) UnicastRemoteObject.exportObject(server, 0);
+            try {
+                registry.bind(serverName, serverStub);
+            } catch (AlreadyBoundException e) {
+                // Another server bound the name first, try the next one, leaving the snapshot of the name to that server
+                server.stop();
+                continue;
+            }
+
+            // Only the replica bound to the name owns its cache snapshot and records to the trace, so the snapshot
+            // is restored after binding. Requests arriving while it is restored are served, filling the cache as usual,
+            // and only miss the entries that are not restored yet; the warm-up trace is applied before binding.
+            server.restoreCacheSnapshot();
+            server.traceWriter = traceWriter;
+            server.setRegistry(registry);
+            return server;
+        }
+    }
+
+    /**
+     * Shuts down the servers started by startZones, and closes the trace they share once all of them are stopped
+     * @param servers the servers to shut down
+     */
+    public static void shutdownZones(Server[] servers) {
+        TraceWriter traceWriter = null;
+        for (Server server : servers) {
+            server.shutdown();
+            if (server.traceWriter != null) {
+                traceWriter = server.traceWriter;
+            }
+        }
+        if (traceWriter != null) {
+            traceWriter.close();
+        }
+    }
+
+    /**
+     * Saves the cache snapshot if enabled, and stops the server.
+     * The trace is not closed, as it may be shared with other servers.
+     * Requests still in the waiting list are not processed.
+     */
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        saveCacheSnapshot();
+        stop();
+    }
+
+    /**
+     * Stops the workers, the latency timer and the cache budget, closes the log, and unbinds and unexports the server
+     */
+    private void stop() {
+        running = false;
+        // The registry is only set once the server is bound, so a replica that lost its name never unbinds the winner
+        Registry currentRegistry = registry;
+        if (currentRegistry != null) {
+            try {
+                currentRegistry.unbind(getServerName());
+            } catch (NotBoundException e) {
+                // Already unbound
+            } catch (Exception e) {
+                System.err.println("Error unbinding " + getServerName() + ": " + e.getMessage());
+            }
+        }
+        if (cacheBudget != null) {
+            cacheBudget.stop();
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        latencyScheduler.shutdownNow();
+        if (redirectScheduler != null) {
+            redirectScheduler.shutdownNow();
+        }
+        synchronized (logWaitingListWriter) {
+            logWaitingListWriter.close();
+        }
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (Exception e) {}
+    }
+
+    /**
+     * The threads that process requests from the waiting list. 
      * Uses the cache if enabled, and retrieves the result for the specified method.
      * For each request it returns both the result of the method and the time it took to execute.
+     * The simulated network delay is applied by a timer after the result is computed, so the worker
+     * is free to process the next request, unless the worker is configured to sleep for the delay.
+     * @param workerCount the amount of worker threads
      */
-    private void startThreadExecutor() {
-        new Thread(() -> {
-            while (true) {
-                try {
-                    Request request = waitingList.take();
-                    long executionStart = System.currentTimeMillis();
-
-                    // Pause execution thread based on where client is from
-                    Thread.sleep((request.getClientZone() == serverZone) ? 80 : 170);
-
-                    // get a key for the request, including its arguments
-                    String[] argsAsString = Arrays.stream(request.getArgs()).map(Object::toString).toArray(String[]::new);
-                    String requestKey = request.getMethod() + ": " + String.join(",", argsAsString);
-                    int result;
-
-                    if (cacheEnabled && cache.containsKey(requestKey)) {
-                        result = cache.get(requestKey);
-                    } else {
-                        switch (request.getMethod()) {
-                            case "getPopulationOfCountry" -> result = getPopulationOfCountryInternal((String) request.getArgs()[0]);
-                            case "getNumberOfCities" -> result = getNumberOfCitiesInternal((String) request.getArgs()[0], (int) request.getArgs()[1]);
-                            case "getNumberOfCountries" -> {
-                                if (request.getArgs().length == 2) {
-                                    result = getNumberOfCountriesInternal((int) request.getArgs()[0], (int) request.getArgs()[1]);
-                                } else {
-                                    result = getNumberOfCountriesInternal((int) request.getArgs()[0], (int) request.getArgs()[1], (int) request.getArgs()[2]);
-                                }
-                            }
-                            default -> result = 0;
-                        }
-                    }
-                    // Update cache if enabled
+    private void startThreadExecutor(int workerCount) {
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::processRequests, "server-zone-" + serverZone + "." + replica + "-worker-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Processes requests from the waiting list until the server is shut down
+     */
+    private void processRequests() {
+        while (running) {
+            Request request = null;
+            try {
+                request = waitingList.take();
+                long executionStart = System.currentTimeMillis();
+                CityIndex index = cityIndex;
+                dequeuedRequests.increment();
+                long networkDelay = getNetworkDelay(request);
+
+                // Pause execution thread based on where client is from, if the delay is not applied by the timer
+                if (sleepingLatency) {
+                    Thread.sleep(networkDelay);
+                }
+
+                String requestKey = request.getRequestKey();
+                Integer cachedResult = cacheEnabled ? getCachedResult(requestKey) : null;
+                int result;
+
+                if (cachedResult != null) {
+                    result = cachedResult;
+                    cacheHits.increment();
+                } else {
                     if (cacheEnabled) {
-                        cache.put(requestKey, result);
+                        cacheMisses.increment();
                     }
+                    result = computeResult(request, index);
+                }
+                // Cache the computed result if enabled, unless the data was updated while computing it
+                if (cacheEnabled && cachedResult == null) {
+                    synchronized (cache) {
+                        cache.put(requestKey, result, request.getCountryDependencies(), index.getVersion());
+                    }
+                }
+
+                long executionStopTime = System.currentTimeMillis();
+                long executionTime = executionStopTime - executionStart;
+                long waitingTime = executionStart - request.getQueueTime();
 
-                    long executionStopTime = System.currentTimeMillis();
-                    long executionTime = executionStopTime - executionStart;
-                    long waitingTime = executionStart - request.getQueueTime();
+                waitingTimeHistogram.record(waitingTime);
+                serviceTimeHistogram.record(sleepingLatency ? executionTime : executionTime + networkDelay);
+                trace(TraceRecord.Type.REQUEST, request, waitingTime, sleepingLatency ? executionTime : executionTime + networkDelay);
 
-                    // Complete request, returning a reponse object
+                // Complete request, returning a reponse object
+                if (sleepingLatency) {
                     request.getResponseFuture().complete(
                         new Response(result, executionTime, waitingTime, serverZone));
+                } else {
+                    releaseResponse(request,
+                        new Response(result, executionTime + networkDelay, waitingTime, serverZone), networkDelay);
+                }
+
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+                e.printStackTrace();
+            } catch (RuntimeException e) {
+                // Fail only the request, so the worker keeps processing the waiting list
+                System.err.println("Error processing request: " + e);
+                if (request != null) {
+                    request.getResponseFuture().completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the result of a request from the city data
+     * @param request the request to compute
+     * @param index the city data to compute the result from
+     * @return the result of the request
+     */
+    private static int computeResult(Request request, CityIndex index) {
+        Object[] args = request.getArgs();
+        switch (request.getMethod()) {
+            case "getPopulationOfCountry" -> {
+                return index.getPopulationOfCountry((String) args[0]);
+            }
+            case "getNumberOfCities" -> {
+                return index.getNumberOfCities((String) args[0], (int) args[1]);
+            }
+            case "getNumberOfCountries" -> {
+                if (args.length == 2) {
+                    return index.getNumberOfCountries((int) args[0], (int) args[1]);
+                }
+                return index.getNumberOfCountries((int) args[0], (int) args[1], (int) args[2]);
+            }
+            default -> {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Fills the cache with the most frequent queries from clients in this zone in a trace,
+     * such as the client input file
+     * @param queries the queries of the trace
+     */
+    private void warmUpCache(List<InputQuery> queries) {
+        if (!cacheEnabled) {
+            return;
+        }
+        Map<String, Integer> queryCounts = new HashMap<>();
+        for (InputQuery query : queries) {
+            if (query.getZone() == serverZone) {
+                String requestKey = new Request(query.getMethod(), query.getArgs(), serverZone).getRequestKey();
+                queryCounts.merge(requestKey, 1, Integer::sum);
+            }
+        }
+        int loaded = preloadCache(queryCounts);
+        System.out.println(getServerName() + " warmed up the cache with " + loaded + " queries from the trace");
+    }
 
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+    /**
+     * Fills the cache with the entries saved at the last shutdown, if cache snapshots are enabled.
+     * Only the keys and access counts are saved, and the results are computed again,
+     * so results of outdated data are never restored.
+     */
+    private void restoreCacheSnapshot() {
+        if (!cacheEnabled || cacheSnapshotPath == null || !Files.exists(cacheSnapshotPath)) {
+            return;
+        }
+        Map<String, Integer> accessCounts = new HashMap<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(cacheSnapshotPath.toFile()))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] fields = line.split("\t", 2);
+                if (line.startsWith("#") || fields.length < 2) {
+                    continue;
                 }
+                accessCounts.merge(fields[1], Integer.parseInt(fields[0]), Integer::sum);
             }
-        }).start();
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error loading cache snapshot: " + e.getMessage());
+            return;
+        }
+        int loaded = preloadCache(accessCounts);
+        System.out.println(getServerName() + " restored " + loaded + " cache entries from " + cacheSnapshotPath);
+    }
+
+    /**
+     * Saves the keys of the cache entries and their access counts, if cache snapshots are enabled
+     */
+    private void saveCacheSnapshot() {
+        if (!cacheEnabled || cacheSnapshotPath == null) {
+            return;
+        }
+        Map<String, Integer> accessCounts;
+        synchronized (cache) {
+            accessCounts = cache.getAccessCounts();
+        }
+        try {
+            Files.createDirectories(cacheSnapshotPath.toAbsolutePath().getParent());
+            try (PrintWriter writer = new PrintWriter(new FileWriter(cacheSnapshotPath.toFile()))) {
+                writer.println("# Cache snapshot of server zone " + serverZone + ": <access count>\t<request key>");
+                accessCounts.forEach((requestKey, accessCount) -> writer.println(accessCount + "\t" + requestKey));
+            }
+            System.out.println(getServerName() + " saved " + accessCounts.size() + " cache entries to " + cacheSnapshotPath);
+        } catch (IOException e) {
+            System.err.println("Error saving cache snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Computes and caches the results of the most used requests, as many as fit in the cache.
+     * The most used requests are stored last, so they are the last to be evicted.
+     * @param accessCounts the keys of the requests and how many times they have been used
+     * @return the amount of cached results
+     */
+    private int preloadCache(Map<String, Integer> accessCounts) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(accessCounts.entrySet());
+        entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        entries = entries.subList(0, Math.min(entries.size(), cache.getCapacity()));
+
+        CityIndex index = cityIndex;
+        int loaded = 0;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Request request = Request.fromKey(entries.get(i).getKey(), serverZone);
+            if (request == null) {
+                continue;
+            }
+            int result = computeResult(request, index);
+            synchronized (cache) {
+                if (cache.put(request.getRequestKey(), result, request.getCountryDependencies(), index.getVersion())) {
+                    cache.setAccessCount(request.getRequestKey(), entries.get(i).getValue());
+                    loaded++;
+                }
+            }
+        }
+        return loaded;
     }
 
     /**
@@ -178,10 +568,7 @@ public class Server extends UnicastRemoteObject implements ServerInterface {
     public Response getPopulationOfCountry(String countryName, int clientZone) throws RemoteException {
         try {
             Request request = new Request("getPopulationOfCountry", new Object[] {countryName}, clientZone);
-            waitingList.put(request);
-            logWaitingList();
-
-            return request.getResponseFuture().get();
+            return submitRequest(request);
         } catch (Exception e) {
             throw new RemoteException("Error when processing request", e);
         }
@@ -194,10 +581,7 @@ public class Server extends UnicastRemoteObject implements ServerInterface {
     public Response getNumberOfCities(String countryName, int minPopulation, int clientZone) throws RemoteException {
         try {
             Request request = new Request("getNumberOfCities", new Object[] {countryName, minPopulation}, clientZone);
-            waitingList.put(request);
-            logWaitingList();
-
-            return request.getResponseFuture().get();
+            return submitRequest(request);
         } catch (Exception e) {
             throw new RemoteException("Error when processing request", e);
         }
@@ -210,10 +594,7 @@ public class Server extends UnicastRemoteObject implements ServerInterface {
     public Response getNumberOfCountries(int cityCount, int minPopulation, int clientZone) throws RemoteException {
         try {
             Request request = new Request("getNumberOfCountries", new Object[] {cityCount, minPopulation}, clientZone);
-            waitingList.put(request);
-            logWaitingList();
-
-            return request.getResponseFuture().get();
+            return submitRequest(request);
         } catch (Exception e) {
             throw new RemoteException("Error when processing request", e);
         }
@@ -226,10 +607,7 @@ public class Server extends UnicastRemoteObject implements ServerInterface {
     public Response getNumberOfCountries(int cityCount, int minPopulation, int maxPopulation, int clientZone) throws RemoteException {
         try {
             Request request = new Request("getNumberOfCountries", new Object[] {cityCount, minPopulation, maxPopulation}, clientZone);
-            waitingList.put(request);
-            logWaitingList();
-
-            return request.getResponseFuture().get();
+            return submitRequest(request);
         } catch (Exception e) {
             throw new RemoteException("Error when processing request", e);
         }
@@ -238,164 +616,295 @@ public class Server extends UnicastRemoteObject implements ServerInterface {
 
 
     /**
-     * Logs the amount of requests in the waiting list and the current time
+     * {@inheritDoc}
      */
-    private void logWaitingList() {
-        synchronized (logWaitingListWriter) {
-            logWaitingListWriter.println(System.currentTimeMillis() + ": " + waitingList.size());
-            logWaitingListWriter.flush(); 
-        }
-        System.out.println("Server zone " + serverZone + " has queue length: " + waitingList.size());
+    @Override
+    public String getMetrics() throws RemoteException {
+        return metrics.toPrometheus();
     }
 
     /**
-     * Loads city data from a CSV file and stores it in a map organized by country names.
-     * @param filename The path to the CSV file containing city data.
+     * {@inheritDoc}
      */
-    private void loadCitiesFromCSV() throws IOException {
-        try {
-            InputStream inputStream = Server.class.getClassLoader().getResourceAsStream("com/ass1/server/data/exercise_1_dataset.csv");
-            if (inputStream == null) {
-                throw new FileNotFoundException("Cannot find exercise_1_dataset.csv");
-            }
-            BufferedReader br = new BufferedReader(new InputStreamReader(inputStream));
-            String line;
-            br.readLine(); // Skip header line
-            while ((line = br.readLine()) != null) {
-                String[] fields = line.split(";");
-                // Ensure that the split line has all required fields
-                if (fields.length >= 7) {
-                    City city = new City(
-                        Integer.parseInt(fields[0]), fields[1], fields[2], fields[3], 
-                        Integer.parseInt(fields[4]), fields[5], fields[6]
-                    );
-                    countries.computeIfAbsent(fields[3], k -> new ArrayList<>()).add(city);
+    @Override
+    public long updateCities(List<CityUpdate> updates) throws RemoteException {
+        synchronized (updateLock) {
+            CityIndex updatedIndex = cityIndex.applyUpdates(updates);
+
+            // Publish the updated data and remove the cached results that depend on the updated countries together,
+            // so no cache hit serves a result of the old data once the updated data is visible
+            if (cacheEnabled) {
+                Set<String> countryNames = new HashSet<>();
+                for (CityUpdate update : updates) {
+                    countryNames.add(update.getCountryName());
                 }
+                synchronized (cache) {
+                    cityIndex = updatedIndex;
+                    cacheInvalidations.add(cache.invalidateCountries(countryNames, updatedIndex.getVersion()));
+                }
+            } else {
+                cityIndex = updatedIndex;
             }
+
+            System.out.println(getServerName() + " updated to data version " + updatedIndex.getVersion());
+            return updatedIndex.getVersion();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Response executeRequest(String method, Object[] args, int clientZone, long requestId) throws RemoteException {
+        // Check the request before it reaches the workers, as the arguments come from the client as they are
+        if (!Request.isValid(method, args)) {
+            throw new RemoteException("Invalid request: " + method + " " + Arrays.deepToString(args));
+        }
+        try {
+            Request request = new Request(method, args, clientZone, requestId);
+            return submitRequest(request);
         } catch (Exception e) {
-            System.err.println("Error loading CSV: " + e.getMessage());
-            e.printStackTrace();
+            throw new RemoteException("Error when processing request", e);
         }
     }
-    
 
-    /** {@inheritDoc} */
-    private int getPopulationOfCountryInternal(String countryName) {
-        return countries.getOrDefault(countryName, Collections.emptyList())
-                        .stream()
-                        .mapToInt(city -> city.population)
-                        .sum();
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancelRequest(long requestId) throws RemoteException {
+        for (Request request : waitingList) {
+            if (request.getRequestId() == requestId && waitingList.remove(request)) {
+                cancelledRequests.increment();
+                request.getResponseFuture().complete(Response.rejected(serverZone, -1));
+                return true;
+            }
+        }
+        return false;
     }
 
-    /** {@inheritDoc} */
-    private int getNumberOfCitiesInternal(String countryName, int minPopulation) {
-        return (int) countries.getOrDefault(countryName, Collections.emptyList())
-                              .stream()
-                              .filter(city -> city.population >= minPopulation)
-                              .count();
+    /**
+     * Submits a request and waits for its response.
+     * Cache hits are answered directly without entering the waiting list, only
+     * applying the simulated network delay through a timer instead of occupying the worker.
+     * Requests not admitted to a full waiting list get a rejected response.
+     * @param request the request to process
+     * @return the response of the request
+     */
+    private Response submitRequest(Request request) throws InterruptedException, ExecutionException {
+        Integer cachedResult = cacheEnabled ? getCachedResult(request.getRequestKey()) : null;
+
+        if (cachedResult != null) {
+            long networkDelay = getNetworkDelay(request);
+            cacheHits.increment();
+            serviceTimeHistogram.record(networkDelay);
+            trace(TraceRecord.Type.REQUEST, request, 0, networkDelay);
+            releaseResponse(request, new Response(cachedResult, networkDelay, 0, serverZone), networkDelay);
+        } else if (admitRequest(request)) {
+            logWaitingList();
+        } else {
+            trace(TraceRecord.Type.REJECTED, request, 0, 0);
+            return rejectedResponse(request);
+        }
+
+        return request.getResponseFuture().get();
     }
 
-    /** {@inheritDoc} */
-    private int getNumberOfCountriesInternal(int cityCount, int minPopulation) {
-        return (int) countries.values().stream()
-                              .filter(cities -> cities.stream().filter(city -> city.population >= minPopulation).count() >= cityCount)
-                              .count();
+    /**
+     * Puts a request into the waiting list if there is room for it.
+     * If the waiting list is full and the admission policy is "shed", a request from another zone
+     * is dropped to make room for a request from this zone, as those are served with a lower priority.
+     * @param request the request to admit
+     * @return true if the request was put into the waiting list
+     */
+    private boolean admitRequest(Request request) throws InterruptedException {
+        synchronized (admissionLock) {
+            if (queueCapacity > 0 && waitingList.size() >= queueCapacity) {
+                if (!"shed".equals(admissionPolicy) || request.getClientZone() != serverZone) {
+                    return false;
+                }
+
+                // Find the most recently queued request from another zone
+                Request shedRequest = null;
+                for (Request queuedRequest : waitingList) {
+                    if (queuedRequest.getClientZone() != serverZone) {
+                        shedRequest = queuedRequest;
+                    }
+                }
+                if (shedRequest == null) {
+                    return false;
+                }
+                if (waitingList.remove(shedRequest)) {
+                    shedRequest.getResponseFuture().complete(rejectedResponse(shedRequest));
+                }
+            }
+            waitingList.put(request);
+            enqueuedRequests.increment();
+            return true;
+        }
     }
 
-    /** {@inheritDoc} */
-    private int getNumberOfCountriesInternal(int cityCount, int minPopulation, int maxPopulation) {
-        return (int) countries.values().stream()
-                              .filter(cities -> cities.stream().filter(city -> city.population >= minPopulation && city.population <= maxPopulation).count() >= cityCount)
-                              .count();
+    /**
+     * Returns a response for a request that was not admitted, with a hint about which zone to retry at
+     * if the admission policy is "redirect"
+     * @param request the request that was not admitted
+     */
+    private Response rejectedResponse(Request request) {
+        rejectedRequests.increment();
+        int retryZone = "redirect".equals(admissionPolicy) ? getRedirectZone(request.getClientZone()) : -1;
+        return Response.rejected(serverZone, retryZone);
     }
 
-}
+    /**
+     * Returns the zone with the shortest waiting list among the client's zone and the next zones after this one,
+     * using the queue lengths last fetched in the background, so rejecting a request never waits for other zones
+     * @param clientZone the zone of the client
+     * @return the zone to retry at, or -1 if none of the zones could be reached
+     */
+    private int getRedirectZone(int clientZone) {
+        Map<Integer, Integer> queueLengths = zoneQueueLengths;
+        List<Integer> candidateZones = new ArrayList<>();
+        if (clientZone != serverZone) {
+            candidateZones.add(clientZone);
+        }
+        for (int i = 1; i <= REDIRECT_ZONES && i < zoneCount; i++) {
+            int zone = (serverZone + i - 1) % zoneCount + 1;
+            if (!candidateZones.contains(zone)) {
+                candidateZones.add(zone);
+            }
+        }
 
-/**
- * Simple cache with max 150 entries, removing the oldest entry when full
- */
-class Cache extends LinkedHashMap<String, Integer> {
-    private final int cacheSize;
+        int retryZone = -1;
+        int shortestQueueLength = Integer.MAX_VALUE;
+        for (int zone : candidateZones) {
+            Integer queueLength = queueLengths.get(zone);
+            if (queueLength != null && queueLength < shortestQueueLength) {
+                retryZone = zone;
+                shortestQueueLength = queueLength;
+            }
+        }
+        return retryZone;
+    }
 
-    public Cache(int cacheSize) {
-        super(cacheSize+1, 1.0f, true);
-        this.cacheSize = cacheSize;
+    /**
+     * Fetches the queue lengths of the first replicas of the other zones, as the client retries at the first replica.
+     * Zones that are not bound or can not be reached are left out, so they are not hinted.
+     */
+    synchronized void refreshZoneQueueLengths() {
+        Registry currentRegistry = registry;
+        if (currentRegistry == null) {
+            return;
+        }
+        Map<Integer, Integer> queueLengths = new HashMap<>();
+        for (int zone = 1; zone <= zoneCount; zone++) {
+            if (zone == serverZone) {
+                continue;
+            }
+            try {
+                ServerInterface server = (ServerInterface) currentRegistry.lookup(ServerNames.bindingName(zone, 1));
+                queueLengths.put(zone, server.getQueueLength());
+            } catch (Exception e) {
+                // The zone is not bound or not reachable
+            }
+        }
+        zoneQueueLengths = queueLengths;
     }
 
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
-        return size() > cacheSize;
+    /**
+     * Records a request to the trace if tracing is enabled
+     * @param type whether the request was served or rejected
+     * @param request the request
+     * @param waitingTime the time the request spent in the waiting list in ms
+     * @param executionTime the execution time of the request in ms, including the simulated network delay
+     */
+    private void trace(TraceRecord.Type type, Request request, long waitingTime, long executionTime) {
+        TraceWriter writer = traceWriter;
+        if (writer != null) {
+            writer.write(new TraceRecord(type, request.getQueueTime(), request.getClientZone(), request.getRequestId(), getServerName(),
+                request.getMethod(), request.getArgs(), waitingTime, executionTime));
+        }
     }
-}
 
-/**
- * A representation of a client request, including the time it was put into queue and a future for a reponse
- */
-class Request {
-    private final String method;
-    private final Object[] args;
-    private final long queueTime;
-    private final CompletableFuture<Response> responseFuture;
-    private final int clientZone;
+    /**
+     * Completes a request with its response after the simulated network delay, without blocking the caller
+     * @param request the request to complete
+     * @param response the response of the request
+     * @param networkDelay the simulated network delay in ms
+     */
+    private void releaseResponse(Request request, Response response, long networkDelay) {
+        latencyScheduler.schedule(() -> request.getResponseFuture().complete(response), networkDelay, TimeUnit.MILLISECONDS);
+    }
 
-    public Request(String method, Object[] args, int clientZone) {
-        this.method = method;
-        this.args = args;
-        this.queueTime = System.currentTimeMillis();
-        this.responseFuture = new CompletableFuture<>();
-        this.clientZone = clientZone;
+    /**
+     * Returns the cached result of a request, or null if it is not cached
+     * @param requestKey key of the request
+     */
+    private Integer getCachedResult(String requestKey) {
+        synchronized (cache) {
+            return cache.get(requestKey);
+        }
     }
 
-    public String getMethod() {
-        return method;
+    private long getCacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
     }
 
-    public Object[] getArgs() {
-        return args;
+    /**
+     * Sets the registry used to find the zone to redirect rejected requests to, and starts fetching the queue lengths
+     * of the other zones periodically if the admission policy is "redirect".
+     * The server unbinds its name from the registry when it stops.
+     * @param registry the registry the server is bound to
+     */
+    void setRegistry(Registry registry) {
+        this.registry = registry;
+        if ("redirect".equals(admissionPolicy) && redirectScheduler == null) {
+            redirectScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "server-zone-" + serverZone + "." + replica + "-redirect");
+                thread.setDaemon(true);
+                return thread;
+            });
+            redirectScheduler.scheduleWithFixedDelay(this::refreshZoneQueueLengths, 0, REDIRECT_REFRESH_INTERVAL, TimeUnit.MILLISECONDS);
+        }
     }
 
-    public long getQueueTime() {
-        return queueTime;
+    /**
+     * Returns the name the server is bound to in the registry
+     */
+    private String getServerName() {
+        return ServerNames.bindingName(serverZone, replica);
     }
 
-    public long getClientZone() {
-        return clientZone;
+    private long getCacheCapacity() {
+        synchronized (cache) {
+            return cache.getCapacity();
+        }
     }
 
-    public CompletableFuture<Response> getResponseFuture() {
-        return responseFuture;
+    private double getCacheHitRatio() {
+        long hits = cacheHits.sum();
+        long lookups = hits + cacheMisses.sum();
+        return lookups > 0 ? (double) hits / lookups : 0;
     }
-}
 
-/**
- * Represents a city with geographical and demographic data.
- */
-class City {
-    int geonameId;
-    String name;
-    String countryCode;
-    String countryName;
-    int population;
-    String timezone;
-    String coordinates;
-
-    /**
-     * Constructs a city instance with provided details.
-     * @param geonameId Unique identifier for the city.
-     * @param name Name of the city.
-     * @param countryCode ISO country code.
-     * @param countryName Full country name.
-     * @param population Population of the city.
-     * @param timezone Timezone of the city.
-     * @param coordinates Geographical coordinates of the city.
-     */
-    public City(int geonameId, String name, String countryCode, String countryName, int population, String timezone, String coordinates) {
-        this.geonameId = geonameId;
-        this.name = name;
-        this.countryCode = countryCode;
-        this.countryName = countryName;
-        this.population = population;
-        this.timezone = timezone;
-        this.coordinates = coordinates;
+    /**
+     * Returns the simulated network delay in ms, based on where the client is from
+     * @param request the request to get the delay for
+     */
+    private long getNetworkDelay(Request request) {
+        return latencyModel.getLatency(request.getClientZone(), serverZone);
     }
+
+    /**
+     * Logs the amount of requests in the waiting list and the current time
+     */
+    private void logWaitingList() {
+        synchronized (logWaitingListWriter) {
+            logWaitingListWriter.println(System.currentTimeMillis() + ": " + waitingList.size());
+            logWaitingListWriter.flush(); 
+        }
+        System.out.println(getServerName() + " has queue length: " + waitingList.size());
+    }
+
 }
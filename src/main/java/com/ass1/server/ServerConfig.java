@@ -0,0 +1,287 @@
+package com.ass1.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuration of the server zones, parsed from the command line arguments.
+ */
+public class ServerConfig {
+    private String cacheMode = "naive";
+    private int delay = 50;
+    private LatencyModel latencyModel = new LatencyModel(80, 170);
+    private boolean sleepingLatency = false;
+    private int queueCapacity = 0;
+    private String admissionPolicy = "reject";
+    private int metricsPort = 0;
+    private int workerCount = 1;
+    private String logDirectory = "output";
+    private String cacheSnapshotDirectory = null;
+    private String warmupTrace = null;
+    private int cacheBudget = 0;
+    private int zoneCount = 5;
+    private int replicaCount = 1;
+    private int zone = 0;
+    private long parallelThreshold = CityIndex.DEFAULT_PARALLEL_THRESHOLD;
+    private String traceFile = null;
+
+    /**
+     * Parses the command line arguments of the server
+     * @param args Command line arguments
+     * @return the server configuration
+     */
+    public static ServerConfig fromArgs(String[] args) {
+        ServerConfig config = new ServerConfig();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--delay") && i + 1 < args.length) {
+                config.delay = Integer.parseInt(args[i + 1]);
+            }
+            if (args[i].equals("--cache") && i + 1 < args.length) {
+                config.cacheMode = args[i + 1];
+            }
+            if (args[i].equals("--latency") && i + 1 < args.length) {
+                config.latencyModel = LatencyModel.parse(args[i + 1]);
+            }
+            if (args[i].equals("--latency-mode") && i + 1 < args.length) {
+                config.sleepingLatency = "sleep".equals(args[i + 1]);
+            }
+            if (args[i].equals("--queue-capacity") && i + 1 < args.length) {
+                config.queueCapacity = Integer.parseInt(args[i + 1]);
+            }
+            if (args[i].equals("--admission") && i + 1 < args.length) {
+                config.admissionPolicy = args[i + 1];
+            }
+            if (args[i].equals("--metrics-port") && i + 1 < args.length) {
+                config.metricsPort = Integer.parseInt(args[i + 1]);
+            }
+            if (args[i].equals("--workers") && i + 1 < args.length) {
+                config.workerCount = Integer.parseInt(args[i + 1]);
+            }
+            if (args[i].equals("--cache-snapshot") && i + 1 < args.length) {
+                config.cacheSnapshotDirectory = args[i + 1];
+            }
+            if (args[i].equals("--warmup") && i + 1 < args.length) {
+                config.warmupTrace = args[i + 1];
+            }
+            if (args[i].equals("--cache-budget") && i + 1 < args.length) {
+                config.cacheBudget = Integer.parseInt(args[i + 1]);
+            }
+            if (args[i].equals("--zones") && i + 1 < args.length) {
+                config.zoneCount = Integer.parseInt(args[i + 1]);
+            }
+            if (args[i].equals("--replicas") && i + 1 < args.length) {
+                config.replicaCount = Integer.parseInt(args[i + 1]);
+            }
+            if (args[i].equals("--zone") && i + 1 < args.length) {
+                config.zone = Integer.parseInt(args[i + 1]);
+            }
+            if (args[i].equals("--parallel-threshold") && i + 1 < args.length) {
+                config.parallelThreshold = Long.parseLong(args[i + 1]);
+            }
+            if (args[i].equals("--trace") && i + 1 < args.length) {
+                config.traceFile = args[i + 1];
+            }
+        }
+        return config;
+    }
+
+    public String getCacheMode() {
+        return cacheMode;
+    }
+
+    public void setCacheMode(String cacheMode) {
+        this.cacheMode = cacheMode;
+    }
+
+    public int getDelay() {
+        return delay;
+    }
+
+    public void setDelay(int delay) {
+        this.delay = delay;
+    }
+
+    public LatencyModel getLatencyModel() {
+        return latencyModel;
+    }
+
+    public void setLatencyModel(LatencyModel latencyModel) {
+        this.latencyModel = latencyModel;
+    }
+
+    /**
+     * Returns true if the worker should sleep for the simulated latency (the original behaviour),
+     * instead of releasing the response through a timer
+     */
+    public boolean isSleepingLatency() {
+        return sleepingLatency;
+    }
+
+    public void setSleepingLatency(boolean sleepingLatency) {
+        this.sleepingLatency = sleepingLatency;
+    }
+
+    /**
+     * Returns the max amount of requests in the waiting list of a zone, or 0 if it is unbounded
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Returns how requests are handled when the waiting list is full:
+     * "reject" rejects the new request, "shed" drops a lower priority request instead if there is one,
+     * and "redirect" rejects the new request with a hint about which zone to retry at
+     */
+    public String getAdmissionPolicy() {
+        return admissionPolicy;
+    }
+
+    public void setAdmissionPolicy(String admissionPolicy) {
+        this.admissionPolicy = admissionPolicy;
+    }
+
+    /**
+     * Returns the port of the local HTTP metrics endpoint, or 0 if it is disabled
+     */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    /**
+     * Returns the amount of worker threads processing the waiting list of each zone
+     */
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Returns the directory the queue length logs of the zones are written to
+     */
+    public String getLogDirectory() {
+        return logDirectory;
+    }
+
+    public void setLogDirectory(String logDirectory) {
+        this.logDirectory = logDirectory;
+    }
+
+    /**
+     * Returns the directory the caches of the zones are saved to at shutdown and restored from at startup,
+     * or null if cache snapshots are disabled
+     */
+    public String getCacheSnapshotDirectory() {
+        return cacheSnapshotDirectory;
+    }
+
+    public void setCacheSnapshotDirectory(String cacheSnapshotDirectory) {
+        this.cacheSnapshotDirectory = cacheSnapshotDirectory;
+    }
+
+    /**
+     * Returns the query trace in the client input format used to warm up the caches at startup,
+     * or null if the caches start empty
+     */
+    public String getWarmupTrace() {
+        return warmupTrace;
+    }
+
+    public void setWarmupTrace(String warmupTrace) {
+        this.warmupTrace = warmupTrace;
+    }
+
+    /**
+     * Returns the total amount of cache entries shared by the replicas started by this server, moved between them based on their hits,
+     * or 0 if each replica has a fixed cache of 150 entries
+     */
+    public int getCacheBudget() {
+        return cacheBudget;
+    }
+
+    public void setCacheBudget(int cacheBudget) {
+        this.cacheBudget = cacheBudget;
+    }
+
+    /**
+     * Returns the amount of zones in the system, numbered from 1
+     */
+    public int getZoneCount() {
+        return zoneCount;
+    }
+
+    public void setZoneCount(int zoneCount) {
+        this.zoneCount = zoneCount;
+    }
+
+    /**
+     * Returns the amount of replicas started for each zone by this server
+     */
+    public int getReplicaCount() {
+        return replicaCount;
+    }
+
+    public void setReplicaCount(int replicaCount) {
+        this.replicaCount = replicaCount;
+    }
+
+    /**
+     * Returns the only zone started by this server, or 0 if it starts all zones
+     */
+    public int getZone() {
+        return zone;
+    }
+
+    public void setZone(int zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * Returns the amount of cities from which getNumberOfCountries is counted in parallel in the common fork-join pool
+     */
+    public long getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public void setParallelThreshold(long parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Returns the file the requests of all replicas are recorded to as a binary trace, or null if they are not recorded
+     */
+    public String getTraceFile() {
+        return traceFile;
+    }
+
+    public void setTraceFile(String traceFile) {
+        this.traceFile = traceFile;
+    }
+
+    /**
+     * Returns the zones started by this server
+     */
+    public List<Integer> getZonesToStart() {
+        List<Integer> zones = new ArrayList<>();
+        if (zone > 0) {
+            zones.add(zone);
+        } else {
+            for (int i = 1; i <= zoneCount; i++) {
+                zones.add(i);
+            }
+        }
+        return zones;
+    }
+}
@@ -2,6 +2,7 @@ package com.ass1.server;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 public interface ServerInterface extends Remote {
     Response getPopulationOfCountry(String countryName, int clientZone) throws RemoteException;
@@ -9,4 +10,35 @@ public interface ServerInterface extends Remote {
     Response getNumberOfCountries(int cityCount, int minPopulation, int clientZone) throws RemoteException;
     Response getNumberOfCountries(int cityCount, int minPopulation, int maxPopulation, int clientZone) throws RemoteException;
     int getQueueLength() throws RemoteException;
+
+    /**
+     * Returns the live metrics of the server zone in the Prometheus text format
+     */
+    String getMetrics() throws RemoteException;
+
+    /**
+     * Applies a batch of city updates to the data of the server zone without blocking queries,
+     * and removes the cached results that depend on the updated countries
+     * @param updates the updates to apply, in order
+     * @return the version of the data after the updates
+     */
+    long updateCities(List<CityUpdate> updates) throws RemoteException;
+
+    /**
+     * Executes a request that can be cancelled with its request id while it is still in the waiting list
+     * @param method name of the server method, e.g. "getPopulationOfCountry"
+     * @param args arguments of the method
+     * @param clientZone zone of the client
+     * @param requestId id chosen by the client to identify the request
+     * @return the response, which is rejected if the request was cancelled
+     * @throws RemoteException if the method is unknown or the arguments do not match it
+     */
+    Response executeRequest(String method, Object[] args, int clientZone, long requestId) throws RemoteException;
+
+    /**
+     * Cancels a request if it is still in the waiting list
+     * @param requestId id of the request
+     * @return true if the request was removed from the waiting list
+     */
+    boolean cancelRequest(long requestId) throws RemoteException;
 }
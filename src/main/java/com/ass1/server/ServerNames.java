@@ -0,0 +1,39 @@
+package com.ass1.server;
+
+/**
+ * The names server replicas are bound to in the registry.
+ * The first replica of a zone is bound as "Server zone <zone>", and further replicas as "Server zone <zone>.<replica>".
+ */
+public final class ServerNames {
+    private static final String PREFIX = "Server zone ";
+
+    private ServerNames() {
+    }
+
+    /**
+     * Returns the name a replica of a zone is bound to
+     * @param zone the zone of the replica
+     * @param replica the number of the replica within the zone, starting at 1
+     */
+    public static String bindingName(int zone, int replica) {
+        return (replica == 1) ? PREFIX + zone : PREFIX + zone + "." + replica;
+    }
+
+    /**
+     * Returns the zone of a replica from the name it is bound to
+     * @param bindingName a name bound in the registry
+     * @return the zone, or -1 if the name is not the name of a server replica
+     */
+    public static int parseZone(String bindingName) {
+        if (!bindingName.startsWith(PREFIX)) {
+            return -1;
+        }
+        String zoneAndReplica = bindingName.substring(PREFIX.length());
+        int separator = zoneAndReplica.indexOf('.');
+        try {
+            return Integer.parseInt(separator == -1 ? zoneAndReplica : zoneAndReplica.substring(0, separator));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
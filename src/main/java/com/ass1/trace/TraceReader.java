@@ -0,0 +1,89 @@
+package com.ass1.trace;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads trace records from a file written by a TraceWriter.
+ */
+public class TraceReader implements AutoCloseable {
+    private final DataInputStream in;
+
+    /**
+     * Opens a trace file
+     * @param traceFile path to the trace file
+     * @throws IOException if the file can not be read or is not a trace of a supported version
+     */
+    public TraceReader(String traceFile) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(traceFile)));
+        if (in.readInt() != TraceWriter.MAGIC) {
+            in.close();
+            throw new IOException(traceFile + " is not a trace file");
+        }
+        short version = in.readShort();
+        if (version != TraceWriter.VERSION) {
+            in.close();
+            throw new IOException("Unsupported trace version " + version);
+        }
+    }
+
+    /**
+     * Reads all records of a trace file
+     * @param traceFile path to the trace file
+     * @return the records in the order they were written
+     * @throws IOException if the file can not be read
+     */
+    public static List<TraceRecord> readAll(String traceFile) throws IOException {
+        List<TraceRecord> records = new ArrayList<>();
+        try (TraceReader reader = new TraceReader(traceFile)) {
+            TraceRecord record;
+            while ((record = reader.read()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Reads the next record
+     * @return the record, or null at the end of the trace, including a record cut off by a crash
+     * @throws IOException if the file can not be read or the record is corrupt
+     */
+    public TraceRecord read() throws IOException {
+        try {
+            byte typeIndex = in.readByte();
+            if (typeIndex < 0 || typeIndex >= TraceRecord.Type.values().length) {
+                throw new IOException("Invalid trace record type " + typeIndex);
+            }
+            TraceRecord.Type type = TraceRecord.Type.values()[typeIndex];
+            long timestamp = in.readLong();
+            int clientZone = in.readInt();
+            long requestId = in.readLong();
+            String serverName = in.readUTF();
+            String method = in.readUTF();
+            byte argCount = in.readByte();
+            if (argCount < 0) {
+                throw new IOException("Invalid trace argument count " + argCount);
+            }
+            Object[] args = new Object[argCount];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = (in.readByte() == TraceWriter.INT_ARG) ? (Object) in.readInt() : in.readUTF();
+            }
+            long waitingTime = in.readLong();
+            long executionTime = in.readLong();
+            return new TraceRecord(type, timestamp, clientZone, requestId, serverName, method, args, waitingTime, executionTime);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
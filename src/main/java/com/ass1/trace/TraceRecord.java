@@ -0,0 +1,82 @@
+package com.ass1.trace;
+
+/**
+ * A single entry of a request trace.
+ * REQUEST and REJECTED records are written by servers for each request they served or rejected, and hold the
+ * server method and arguments, so the request can be replayed. ROUTE records are written by the proxy for each
+ * routing decision, with the key of the routed query as the only argument if the client gave one.
+ */
+public class TraceRecord {
+    public enum Type { REQUEST, REJECTED, ROUTE }
+
+    private final Type type;
+    private final long timestamp;
+    private final int clientZone;
+    private final long requestId;
+    private final String serverName;
+    private final String method;
+    private final Object[] args;
+    private final long waitingTime;
+    private final long executionTime;
+
+    /**
+     * Constructs a trace record
+     * @param type the type of the record
+     * @param timestamp the time the request arrived, in ms since the epoch
+     * @param clientZone the zone of the client
+     * @param requestId the id the client gave the request, shared by a hedged request and its duplicate, or -1
+     * @param serverName the name of the server that processed the request, or that the request was routed to
+     * @param method the server method of the request, or "route" for ROUTE records
+     * @param args the arguments of the request, each a String or an Integer
+     * @param waitingTime the time the request spent in the waiting list in ms
+     * @param executionTime the execution time of the request in ms, including the simulated network delay
+     */
+    public TraceRecord(Type type, long timestamp, int clientZone, long requestId, String serverName, String method,
+            Object[] args, long waitingTime, long executionTime) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.clientZone = clientZone;
+        this.requestId = requestId;
+        this.serverName = serverName;
+        this.method = method;
+        this.args = args;
+        this.waitingTime = waitingTime;
+        this.executionTime = executionTime;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getClientZone() {
+        return clientZone;
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public Object[] getArgs() {
+        return args;
+    }
+
+    public long getWaitingTime() {
+        return waitingTime;
+    }
+
+    public long getExecutionTime() {
+        return executionTime;
+    }
+}
@@ -0,0 +1,79 @@
+package com.ass1.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes trace records to a compact binary file. Records can be written from several threads.
+ * The file starts with a magic number and a format version, followed by the records.
+ */
+public class TraceWriter implements AutoCloseable {
+    static final int MAGIC = 0x41315452; // "A1TR"
+    static final short VERSION = 1;
+    static final byte STRING_ARG = 'S';
+    static final byte INT_ARG = 'I';
+
+    private final DataOutputStream out;
+    private boolean closed = false;
+
+    /**
+     * Creates a trace file, replacing any existing file
+     * @param traceFile path to the trace file
+     * @throws IOException if the file can not be created
+     */
+    public TraceWriter(String traceFile) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(traceFile)));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+    }
+
+    /**
+     * Writes a record to the trace. Records written after the trace is closed are ignored.
+     * @param record the record to write
+     */
+    public synchronized void write(TraceRecord record) {
+        if (closed) {
+            return;
+        }
+        try {
+            out.writeByte(record.getType().ordinal());
+            out.writeLong(record.getTimestamp());
+            out.writeInt(record.getClientZone());
+            out.writeLong(record.getRequestId());
+            out.writeUTF(record.getServerName());
+            out.writeUTF(record.getMethod());
+            out.writeByte(record.getArgs().length);
+            for (Object arg : record.getArgs()) {
+                if (arg instanceof Integer) {
+                    out.writeByte(INT_ARG);
+                    out.writeInt((Integer) arg);
+                } else {
+                    out.writeByte(STRING_ARG);
+                    out.writeUTF(String.valueOf(arg));
+                }
+            }
+            out.writeLong(record.getWaitingTime());
+            out.writeLong(record.getExecutionTime());
+        } catch (IOException e) {
+            System.err.println("Error writing trace: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Flushes and closes the trace file, can be called several times
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.err.println("Error closing trace: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.ass1.proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class HashRingTest {
+	private static final int KEY_COUNT = 1000;
+
+	private static String key(int i) {
+		return "getPopulationOfCountry: Country " + i;
+	}
+
+	@Test
+	void testOwnerIsStable() {
+		HashRing ring = new HashRing(List.of(1, 2, 3, 4, 5));
+		HashRing sameRing = new HashRing(List.of(5, 4, 3, 2, 1));
+
+		for (int i = 0; i < KEY_COUNT; i++) {
+			assertEquals(ring.getOwner(key(i), -1), ring.getOwner(key(i), -1));
+			assertEquals(ring.getOwner(key(i), -1), sameRing.getOwner(key(i), -1), "The owner should not depend on the order of the zones");
+		}
+	}
+
+	@Test
+	void testExcludedZoneIsNeverOwner() {
+		HashRing ring = new HashRing(List.of(1, 2, 3, 4, 5));
+
+		for (int i = 0; i < KEY_COUNT; i++) {
+			int owner = ring.getOwner(key(i), -1);
+			int ownerWithoutZone3 = ring.getOwner(key(i), 3);
+			assertNotEquals(3, ownerWithoutZone3);
+			if (owner != 3) {
+				assertEquals(owner, ownerWithoutZone3, "Only the keys of the excluded zone should move");
+			}
+		}
+	}
+
+	@Test
+	void testNoOwnerWithoutOtherZones() {
+		assertEquals(-1, new HashRing(List.of(2)).getOwner(key(0), 2));
+		assertEquals(-1, new HashRing(List.of()).getOwner(key(0), -1));
+		assertEquals(2, new HashRing(List.of(2)).getOwner(key(0), 1));
+	}
+
+	@Test
+	void testKeysAreSpreadOverZones() {
+		HashRing ring = new HashRing(List.of(1, 2, 3, 4, 5));
+		Map<Integer, Integer> keysPerZone = new HashMap<>();
+		for (int i = 0; i < KEY_COUNT; i++) {
+			keysPerZone.merge(ring.getOwner(key(i), -1), 1, Integer::sum);
+		}
+
+		assertEquals(5, keysPerZone.size());
+		for (int keyCount : keysPerZone.values()) {
+			// Each zone should own roughly a fifth of the keys
+			assertTrue(keyCount > KEY_COUNT / 10 && keyCount < KEY_COUNT * 2 / 5, "Zone owns " + keyCount + " keys");
+		}
+	}
+
+	@Test
+	void testAddingZoneOnlyMovesKeysToIt() {
+		HashRing ring = new HashRing(List.of(1, 2, 3));
+		HashRing grownRing = new HashRing(List.of(1, 2, 3, 4));
+
+		for (int i = 0; i < KEY_COUNT; i++) {
+			int owner = grownRing.getOwner(key(i), -1);
+			if (owner != 4) {
+				assertEquals(ring.getOwner(key(i), -1), owner);
+			}
+		}
+	}
+}
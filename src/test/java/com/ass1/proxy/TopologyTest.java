@@ -0,0 +1,34 @@
+package com.ass1.proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TopologyTest {
+
+	@Test
+	void testFromBindingNamesGroupsReplicasByZone() {
+		Topology topology = Topology.fromBindingNames(new String[] {
+			"Server zone 3.2", "Proxy", "Server zone 1", "Server zone 3", "Other", "Server zone x", "Server zone 1.2"
+		});
+
+		assertEquals(List.of(1, 3), List.copyOf(topology.getZones()));
+		assertEquals(List.of("Server zone 1", "Server zone 1.2"), topology.getReplicas(1));
+		assertEquals(List.of("Server zone 3", "Server zone 3.2"), topology.getReplicas(3), "Replicas should be sorted");
+		assertEquals(List.of(), topology.getReplicas(2));
+	}
+
+	@Test
+	void testNeighboursWrapAroundTheRing() {
+		Topology topology = Topology.fromBindingNames(new String[] {
+			"Server zone 1", "Server zone 2", "Server zone 4", "Server zone 5"
+		});
+
+		assertEquals(List.of(4, 5), topology.getNeighbours(2, 2));
+		assertEquals(List.of(5, 1, 2), topology.getNeighbours(4, 3));
+		assertEquals(List.of(4, 5, 1, 2), topology.getNeighbours(3, 10), "A zone without replicas should get all zones");
+		assertEquals(List.of(), topology.getNeighbours(1, 0));
+	}
+}
@@ -0,0 +1,74 @@
+package com.ass1.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CacheBudgetTest {
+
+    /**
+     * Fills a cache beyond its capacity and looks up the evicted key, counting a ghost hit
+     */
+    private static void produceGhostHit(Cache cache) {
+        for (int i = 0; i <= cache.getCapacity(); i++) {
+            cache.put("key " + i, i);
+        }
+        cache.get("key 0");
+    }
+
+    /**
+     * Fills a cache to its capacity and looks up its least recently used key, counting a tail hit
+     */
+    private static void produceTailHit(Cache cache) {
+        for (int i = 0; i < cache.getCapacity(); i++) {
+            cache.put("key " + i, i);
+        }
+        cache.get("key 0");
+    }
+
+    @Test
+    void testCapacityMovesToCacheWithGhostHits() {
+        Cache growing = new Cache(60);
+        Cache idle = new Cache(60);
+        CacheBudget budget = new CacheBudget(List.of(idle, growing));
+
+        produceGhostHit(growing);
+        budget.rebalance();
+
+        assertEquals(60 + Cache.MARGIN, growing.getCapacity());
+        assertEquals(60 - Cache.MARGIN, idle.getCapacity());
+
+        // Only hits since the last move count, so nothing moves without new hits
+        budget.rebalance();
+        assertEquals(60 + Cache.MARGIN, growing.getCapacity());
+    }
+
+    @Test
+    void testCapacityStaysWhenLossIsNotSmallerThanGain() {
+        Cache growing = new Cache(60);
+        Cache shrinking = new Cache(60);
+        CacheBudget budget = new CacheBudget(List.of(growing, shrinking));
+
+        produceGhostHit(growing);
+        produceTailHit(shrinking);
+        budget.rebalance();
+
+        assertEquals(60, growing.getCapacity());
+        assertEquals(60, shrinking.getCapacity());
+    }
+
+    @Test
+    void testCacheIsNotShrunkBelowMinimum() {
+        Cache growing = new Cache(60);
+        Cache smallest = new Cache(Cache.MARGIN);
+        CacheBudget budget = new CacheBudget(List.of(growing, smallest));
+
+        produceGhostHit(growing);
+        budget.rebalance();
+
+        assertEquals(60, growing.getCapacity());
+        assertEquals(Cache.MARGIN, smallest.getCapacity());
+    }
+}
@@ -0,0 +1,97 @@
+package com.ass1.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class CacheTest {
+
+    @Test
+    void testInvalidateRemovesOnlyDependentEntries() {
+        Cache cache = new Cache(10);
+        cache.put("norway", 1, Set.of("Norway"), 0);
+        cache.put("chile", 2, Set.of("Chile"), 0);
+        cache.put("all", 3, null, 0);
+
+        assertEquals(2, cache.invalidateCountries(Set.of("Norway"), 1));
+
+        assertNull(cache.get("norway"));
+        assertNull(cache.get("all"), "Entries depending on all countries should be removed by any update");
+        assertEquals(Integer.valueOf(2), cache.get("chile"));
+    }
+
+    @Test
+    void testInvalidateAfterEntryIsReplacedAndEvicted() {
+        Cache cache = new Cache(2);
+        cache.put("a", 1, Set.of("Norway"), 0);
+        cache.put("a", 1, Set.of("Chile"), 0);
+        cache.put("b", 2, Set.of("Norway"), 0);
+        cache.put("c", 3, Set.of("Norway"), 0);
+
+        // "a" now depends on Chile only, and was evicted as the oldest entry
+        assertEquals(2, cache.invalidateCountries(Set.of("Norway"), 1));
+        assertEquals(0, cache.invalidateCountries(Set.of("Chile"), 2));
+        assertTrue(cache.isEmpty());
+    }
+
+    @Test
+    void testStalePutIsRejected() {
+        Cache cache = new Cache(10);
+        cache.invalidateCountries(Set.of("Norway"), 2);
+
+        assertFalse(cache.put("norway", 1, Set.of("Norway"), 1), "A result computed before the update should not be stored");
+        assertFalse(cache.put("all", 1, null, 1));
+        assertEquals(2, cache.getStalePutCount());
+        assertNull(cache.get("norway"));
+
+        assertTrue(cache.put("norway", 1, Set.of("Norway"), 2));
+        assertTrue(cache.put("chile", 2, Set.of("Chile"), 1), "Updates of other countries should not make a result stale");
+        assertEquals(Integer.valueOf(1), cache.get("norway"));
+    }
+
+    @Test
+    void testPlainPutDependsOnAllCountries() {
+        Cache cache = new Cache(10);
+        assertNull(cache.put("plain", 1));
+        assertEquals(Integer.valueOf(1), cache.put("plain", 2));
+        cache.putAll(Map.of("other", 3));
+
+        assertEquals(2, cache.invalidateCountries(Set.of("Chile"), 1));
+        assertTrue(cache.isEmpty());
+    }
+
+    @Test
+    void testEachRequestIsCountedOnce() {
+        Cache cache = new Cache(10);
+        cache.put("norway", 1, Set.of("Norway"), 0);
+
+        // A hit followed by storing the same result again, as a worker may do, is a single request
+        cache.get("norway");
+        cache.put("norway", 1, Set.of("Norway"), 0);
+        cache.get("norway");
+        cache.get("missing");
+        cache.put("chile", 2, Set.of("Chile"), 0);
+
+        assertEquals(Map.of("norway", 3, "chile", 1), cache.getAccessCounts());
+        assertEquals("norway", cache.getAccessCounts().keySet().iterator().next(), "The most used entry should be first");
+    }
+
+    @Test
+    void testAccessCountsAreRemovedWithTheirEntries() {
+        Cache cache = new Cache(1);
+        cache.put("norway", 1, Set.of("Norway"), 0);
+        cache.get("norway");
+        cache.put("chile", 2, Set.of("Chile"), 0);
+
+        assertEquals(Map.of("chile", 1), cache.getAccessCounts());
+        cache.setAccessCount("norway", 5);
+        cache.setAccessCount("chile", 5);
+        assertEquals(Map.of("chile", 5), cache.getAccessCounts(), "Only stored entries should get an access count");
+    }
+}
@@ -0,0 +1,141 @@
+package com.ass1.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CityIndexTest {
+
+    private static CityIndex createIndex() {
+        return CityIndex.fromCities(List.of(
+            ServerTest.city(1, "Belgium", 200000), ServerTest.city(2, "Belgium", 15000),
+            ServerTest.city(3, "Norway", 700000), ServerTest.city(4, "Norway", 300000)));
+    }
+
+    @Test
+    void testAddCity() {
+        CityIndex updated = createIndex().applyUpdates(List.of(
+            CityUpdate.add(5, "Liege", "BE", "Belgium", 80000, "Europe/Brussels", "50,5")));
+
+        assertEquals(295000, updated.getPopulationOfCountry("Belgium"));
+        assertEquals(2, updated.getNumberOfCities("Belgium", 50000));
+    }
+
+    @Test
+    void testAddCityWithExistingIdIsIgnored() {
+        CityIndex updated = createIndex().applyUpdates(List.of(
+            CityUpdate.add(1, "Duplicate", "BE", "Belgium", 999999, "Europe/Brussels", "50,5")));
+
+        assertEquals(215000, updated.getPopulationOfCountry("Belgium"));
+        assertEquals(2, updated.getNumberOfCities("Belgium", 0));
+    }
+
+    @Test
+    void testAddCityToNewCountry() {
+        CityIndex updated = createIndex().applyUpdates(List.of(
+            CityUpdate.add(5, "Santiago", "CL", "Chile", 6000000, "America/Santiago", "-33,-70")));
+
+        assertEquals(3, updated.getCountryCount());
+        assertEquals(6000000, updated.getPopulationOfCountry("Chile"));
+    }
+
+    @Test
+    void testRemoveCity() {
+        CityIndex updated = createIndex().applyUpdates(List.of(
+            CityUpdate.remove(4, "Norway"),
+            CityUpdate.remove(99, "Norway")));
+
+        assertEquals(700000, updated.getPopulationOfCountry("Norway"));
+        assertEquals(1, updated.getNumberOfCities("Norway", 0));
+    }
+
+    @Test
+    void testRemovingLastCityRemovesCountry() {
+        CityIndex updated = createIndex().applyUpdates(List.of(
+            CityUpdate.remove(1, "Belgium"),
+            CityUpdate.remove(2, "Belgium")));
+
+        assertEquals(1, updated.getCountryCount());
+        assertEquals(0, updated.getPopulationOfCountry("Belgium"));
+        assertEquals(1, updated.getNumberOfCountries(1, 0), "Only Norway should be counted");
+    }
+
+    @Test
+    void testUpdatePopulationChangesTotal() {
+        CityIndex updated = createIndex().applyUpdates(List.of(
+            CityUpdate.updatePopulation(2, "Belgium", 5000),
+            CityUpdate.updatePopulation(99, "Belgium", 5000)));
+
+        assertEquals(205000, updated.getPopulationOfCountry("Belgium"));
+        assertEquals(1, updated.getNumberOfCities("Belgium", 10000));
+    }
+
+    @Test
+    void testUpdatesAreAppliedInOrder() {
+        CityIndex updated = createIndex().applyUpdates(List.of(
+            CityUpdate.add(5, "Bergen", "NO", "Norway", 280000, "Europe/Oslo", "60,5"),
+            CityUpdate.updatePopulation(5, "Norway", 290000),
+            CityUpdate.remove(3, "Norway")));
+
+        assertEquals(590000, updated.getPopulationOfCountry("Norway"));
+    }
+
+    @Test
+    void testUpdatesFindCitiesAfterRemovals() {
+        CityIndex updated = createIndex().applyUpdates(List.of(
+            CityUpdate.add(5, "Bergen", "NO", "Norway", 280000, "Europe/Oslo", "60,5"),
+            CityUpdate.add(6, "Tromso", "NO", "Norway", 77000, "Europe/Oslo", "69,18"),
+            CityUpdate.remove(3, "Norway"),
+            CityUpdate.updatePopulation(6, "Norway", 78000),
+            CityUpdate.remove(5, "Norway"),
+            CityUpdate.add(6, "Duplicate", "NO", "Norway", 1, "Europe/Oslo", "0,0"),
+            CityUpdate.updatePopulation(4, "Norway", 310000)));
+
+        assertEquals(388000, updated.getPopulationOfCountry("Norway"));
+        assertEquals(2, updated.getNumberOfCities("Norway", 0));
+        assertEquals(1, updated.getNumberOfCities("Norway", 300000));
+    }
+
+    @Test
+    void testUpdatesCreateNewVersionAndKeepOldIndex() {
+        CityIndex index = createIndex();
+        CityIndex updated = index.applyUpdates(List.of(CityUpdate.updatePopulation(3, "Norway", 1)));
+        CityIndex updatedAgain = updated.applyUpdates(List.of());
+
+        assertEquals(0, index.getVersion());
+        assertEquals(1, updated.getVersion());
+        assertEquals(2, updatedAgain.getVersion());
+        assertEquals(1000000, index.getPopulationOfCountry("Norway"), "The old index should not be changed");
+        assertEquals(300001, updated.getPopulationOfCountry("Norway"));
+        assertEquals(215000, updated.getPopulationOfCountry("Belgium"));
+    }
+
+    @Test
+    void testParallelCountMatchesSequentialCount() {
+        CityIndex sequential = CityIndex.synthetic(200_000, 250, 42).withParallelThreshold(Long.MAX_VALUE);
+        CityIndex parallel = sequential.withParallelThreshold(0);
+
+        for (int cityCount : new int[] {-1, 0, 1, 20, 200, 5000}) {
+            assertEquals(sequential.getNumberOfCountries(cityCount, 1_000_000), parallel.getNumberOfCountries(cityCount, 1_000_000),
+                "cityCount " + cityCount);
+            assertEquals(sequential.getNumberOfCountries(cityCount, 10_000, 100_000), parallel.getNumberOfCountries(cityCount, 10_000, 100_000),
+                "cityCount " + cityCount);
+        }
+        assertEquals(250, parallel.getNumberOfCountries(0, 1_000_000), "Every country has at least 0 cities");
+        assertEquals(250, parallel.getNumberOfCountries(-1, 10_000, 100_000));
+    }
+
+    @Test
+    void testParallelCountAfterUpdates() {
+        CityIndex sequential = CityIndex.synthetic(200_000, 250, 42).withParallelThreshold(Long.MAX_VALUE);
+        List<CityUpdate> updates = List.of(CityUpdate.remove(0, "Country 0"), CityUpdate.updatePopulation(1, "Country 0", 5_000_000));
+
+        CityIndex updatedSequential = sequential.applyUpdates(updates);
+        CityIndex updatedParallel = sequential.withParallelThreshold(0).applyUpdates(updates);
+
+        assertEquals(updatedSequential.getNumberOfCountries(20, 1_000_000), updatedParallel.getNumberOfCountries(20, 1_000_000));
+        assertEquals(1, updatedParallel.getVersion());
+    }
+}
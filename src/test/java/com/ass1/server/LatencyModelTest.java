@@ -0,0 +1,46 @@
+package com.ass1.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyModelTest {
+
+    @Test
+    void testDefaultsWithoutOverrides() {
+        LatencyModel latencyModel = new LatencyModel(80, 170);
+        assertEquals(80, latencyModel.getLatency(2, 2));
+        assertEquals(170, latencyModel.getLatency(1, 2));
+    }
+
+    @Test
+    void testParseLocalAndRemote() {
+        LatencyModel latencyModel = LatencyModel.parse("local=10, remote=30");
+        assertEquals(10, latencyModel.getLatency(3, 3));
+        assertEquals(30, latencyModel.getLatency(3, 4));
+    }
+
+    @Test
+    void testParseKeepsDefaultsNotGiven() {
+        LatencyModel latencyModel = LatencyModel.parse("remote=200");
+        assertEquals(80, latencyModel.getLatency(1, 1));
+        assertEquals(200, latencyModel.getLatency(1, 2));
+    }
+
+    @Test
+    void testParseZonePairOnlyAppliesInOneDirection() {
+        LatencyModel latencyModel = LatencyModel.parse("local=80,remote=170,1-2=120");
+        assertEquals(120, latencyModel.getLatency(1, 2));
+        assertEquals(170, latencyModel.getLatency(2, 1), "The latency of the pair is from client zone 1 to server zone 2");
+        assertEquals(170, latencyModel.getLatency(1, 3));
+        assertEquals(80, latencyModel.getLatency(1, 1));
+    }
+
+    @Test
+    void testParseRejectsInvalidEntries() {
+        assertThrows(IllegalArgumentException.class, () -> LatencyModel.parse("local"));
+        assertThrows(IllegalArgumentException.class, () -> LatencyModel.parse("local=80=90"));
+        assertThrows(NumberFormatException.class, () -> LatencyModel.parse("remote=slow"));
+    }
+}
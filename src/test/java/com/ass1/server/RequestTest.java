@@ -0,0 +1,44 @@
+package com.ass1.server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class RequestTest {
+
+    private static void assertRoundTrip(String method, Object... args) {
+        Request request = new Request(method, args, 2);
+        Request parsed = Request.fromKey(request.getRequestKey(), 3);
+
+        assertEquals(method, parsed.getMethod());
+        assertArrayEquals(args, parsed.getArgs());
+        assertEquals(3, parsed.getClientZone());
+        assertEquals(request.getRequestKey(), parsed.getRequestKey());
+    }
+
+    @Test
+    void testRoundTripOfEveryMethod() {
+        assertRoundTrip("getPopulationOfCountry", "Norway");
+        assertRoundTrip("getNumberOfCities", "Norway", 10000);
+        assertRoundTrip("getNumberOfCountries", 2, 5000000);
+        assertRoundTrip("getNumberOfCountries", 30, 100000, 800000);
+    }
+
+    @Test
+    void testRoundTripOfCountryNamesWithCommas() {
+        assertRoundTrip("getPopulationOfCountry", "Korea, Republic of");
+        assertRoundTrip("getNumberOfCities", "Korea, Republic of", 50000);
+    }
+
+    @Test
+    void testInvalidKeys() {
+        assertNull(Request.fromKey("getPopulationOfCountry Norway", 1), "Keys without a separator are invalid");
+        assertNull(Request.fromKey("deleteEverything: Norway", 1));
+        assertNull(Request.fromKey("getNumberOfCities: Norway", 1), "getNumberOfCities needs a population");
+        assertNull(Request.fromKey("getNumberOfCities: Norway,many", 1));
+        assertNull(Request.fromKey("getNumberOfCountries: 1", 1));
+        assertNull(Request.fromKey("getNumberOfCountries: 1,2,3,4", 1));
+    }
+}
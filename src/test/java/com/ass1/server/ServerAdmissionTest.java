@@ -0,0 +1,158 @@
+package com.ass1.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests admission control of full waiting lists. The servers have no workers, so admitted requests
+ * stay in the waiting list and the tests control exactly how full it is.
+ */
+class ServerAdmissionTest {
+    @TempDir
+    Path logDirectory;
+
+    private final List<Server> servers = new ArrayList<>();
+    private final ExecutorService clients = Executors.newCachedThreadPool();
+    private Registry registry;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        clients.shutdownNow();
+        for (Server server : servers) {
+            server.shutdown();
+        }
+        if (registry != null) {
+            UnicastRemoteObject.unexportObject(registry, true);
+        }
+    }
+
+    private Server startServer(int zone, String admissionPolicy) throws Exception {
+        ServerConfig config = new ServerConfig();
+        config.setWorkerCount(0);
+        config.setQueueCapacity(1);
+        config.setAdmissionPolicy(admissionPolicy);
+        config.setLogDirectory(logDirectory.toString());
+        Server server = new Server(zone, 1, config, ServerTest.createIndex());
+        servers.add(server);
+        return server;
+    }
+
+    /**
+     * Sends a request in the background, which waits in the waiting list unless it is rejected
+     */
+    private Future<Response> submit(Server server, String countryName, int clientZone) throws Exception {
+        int queueLength = server.getQueueLength();
+        Future<Response> response = clients.submit(() -> server.getPopulationOfCountry(countryName, clientZone));
+        waitFor(() -> server.getQueueLength() > queueLength || response.isDone());
+        return response;
+    }
+
+    private static void waitFor(Condition condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.isMet()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out waiting for the waiting list");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private interface Condition {
+        boolean isMet() throws Exception;
+    }
+
+    @Test
+    void testRejectWhenFull() throws Exception {
+        Server server = startServer(1, "reject");
+        Future<Response> queued = submit(server, "Norway", 1);
+
+        Response response = server.getPopulationOfCountry("Chile", 1);
+
+        assertTrue(response.isRejected());
+        assertEquals(-1, response.getRetryZone(), "Only redirect gives a hint about which zone to retry at");
+        assertFalse(queued.isDone(), "The queued request should stay in the waiting list");
+        assertEquals(1, server.getQueueLength());
+        assertEquals(1, ServerTest.getMetric(server, "server_requests_rejected_total"));
+    }
+
+    @Test
+    void testShedRequestFromOtherZone() throws Exception {
+        Server server = startServer(1, "shed");
+        Future<Response> remote = submit(server, "Norway", 2);
+
+        // A request from another zone is rejected, as it has no higher priority than the queued one
+        assertTrue(server.getPopulationOfCountry("Chile", 3).isRejected());
+        assertFalse(remote.isDone());
+
+        // A request from the server's own zone takes the place of the queued request from another zone
+        Future<Response> local = clients.submit(() -> server.getPopulationOfCountry("Chile", 1));
+        Response shed = remote.get(5, TimeUnit.SECONDS);
+        assertTrue(shed.isRejected());
+        waitFor(() -> server.getQueueLength() == 1);
+        assertFalse(local.isDone(), "The request from the own zone should be in the waiting list");
+        assertEquals(2, ServerTest.getMetric(server, "server_requests_rejected_total"),
+            "The rejected and the shed request should each be counted once");
+    }
+
+    @Test
+    void testShedRejectsWhenOnlyOwnZoneIsQueued() throws Exception {
+        Server server = startServer(1, "shed");
+        Future<Response> queued = submit(server, "Norway", 1);
+
+        assertTrue(server.getPopulationOfCountry("Chile", 1).isRejected());
+        assertFalse(queued.isDone());
+    }
+
+    @Test
+    void testRedirectToZoneWithShortestQueue() throws Exception {
+        registry = LocateRegistry.createRegistry(0);
+        Server server = startServer(1, "redirect");
+        Server nextZone = startServer(2, "reject");
+        Server zoneAfterNext = startServer(3, "reject");
+        registry.bind(ServerNames.bindingName(1, 1), server);
+        registry.bind(ServerNames.bindingName(2, 1), nextZone);
+        registry.bind(ServerNames.bindingName(3, 1), zoneAfterNext);
+        server.setRegistry(registry);
+
+        submit(server, "Norway", 1);
+        submit(nextZone, "Norway", 2);
+        server.refreshZoneQueueLengths();
+
+        // Zone 2 is the next zone, but zone 3 has the shorter waiting list
+        Response response = server.getPopulationOfCountry("Chile", 1);
+        assertTrue(response.isRejected());
+        assertEquals(3, response.getRetryZone());
+
+        // The client's own zone is a candidate as well, here the only one with an empty waiting list
+        submit(zoneAfterNext, "Norway", 3);
+        registry.bind(ServerNames.bindingName(4, 1), startServer(4, "reject"));
+        server.refreshZoneQueueLengths();
+        assertEquals(4, server.getPopulationOfCountry("Chile", 4).getRetryZone());
+    }
+
+    @Test
+    void testRedirectWithoutReachableZones() throws Exception {
+        Server server = startServer(1, "redirect");
+        submit(server, "Norway", 1);
+
+        Response response = server.getPopulationOfCountry("Chile", 1);
+        assertTrue(response.isRejected());
+        assertEquals(-1, response.getRetryZone());
+    }
+}
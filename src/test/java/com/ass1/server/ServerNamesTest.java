@@ -0,0 +1,28 @@
+package com.ass1.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class ServerNamesTest {
+
+    @Test
+    void testBindingName() {
+        assertEquals("Server zone 2", ServerNames.bindingName(2, 1), "The first replica should keep the name without replicas");
+        assertEquals("Server zone 2.3", ServerNames.bindingName(2, 3));
+    }
+
+    @Test
+    void testParseZone() {
+        assertEquals(2, ServerNames.parseZone(ServerNames.bindingName(2, 1)));
+        assertEquals(12, ServerNames.parseZone(ServerNames.bindingName(12, 4)));
+    }
+
+    @Test
+    void testParseZoneOfOtherNames() {
+        assertEquals(-1, ServerNames.parseZone("Proxy"));
+        assertEquals(-1, ServerNames.parseZone("Server zone "));
+        assertEquals(-1, ServerNames.parseZone("Server zone one"));
+        assertEquals(-1, ServerNames.parseZone("server zone 1"));
+    }
+}
@@ -1,38 +1,153 @@
 package com.ass1.server;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
 class ServerTest {
-//    private Server server;
-
-//     @BeforeEach
-//     void setUp() throws Exception {
-//         server = new Server(); // Make sure this can load the CSV file without issues
-//     }
-
-//     @Test
-//     void testGetPopulationOfCountry() {
-//         // Assuming "Belgium" has a specific known population in your test CSV
-//         assertEquals(15411242, server.getPopulationOfCountry("Belgium"),
-//             "The population count for Belgium should be accurate.");
-//     }
-
-//     @Test
-//     void testGetNumberOfCities() {
-//         // Assuming "Belgium" has a certain number of cities above a population threshold
-//         assertEquals(372, server.getNumberOfCities("Belgium", 10000),
-//             "The number of cities in Belgium with population over 10000 should be accurate.");
-//     }
-
-//     @Test
-//     void testGetNumberOfCountriesWithMinCityCountAndPopulation() {
-//         // Test the count of countries with a minimum number of cities having at least a certain population
-//         assertEquals(7, server.getNumberOfCountries(2, 5000000),
-//             "The number of countries with at least 2 cities having populations over 5000000 should be accurate.");
-//     }
-
-//     @Test
-//     void testGetNumberOfCountriesWithCityCountRange() {
-//         // Test the number of countries with a specified range of city counts and population limits
-//         assertEquals(30, server.getNumberOfCountries(30, 100000, 800000),
-//             "The number of countries with 30 cities having populations between 100000 and 800000 should be accurate.");
-//     }
+    @TempDir
+    Path logDirectory;
+
+    private Server server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ServerConfig config = new ServerConfig();
+        config.setCacheMode("server");
+        config.setLogDirectory(logDirectory.toString());
+        server = new Server(1, 1, config, createIndex());
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.shutdown();
+    }
+
+    /**
+     * Creates a small city index with known answers, so the tests do not depend on the CSV dataset
+     */
+    static CityIndex createIndex() {
+        return CityIndex.fromCities(List.of(
+            city(1, "Belgium", 200000), city(2, "Belgium", 15000), city(3, "Belgium", 5000),
+            city(4, "Norway", 700000), city(5, "Norway", 300000), city(6, "Norway", 120000),
+            city(7, "Chile", 6000000), city(8, "Chile", 5500000), city(9, "Chile", 90000),
+            city(10, "Japan", 9000000), city(11, "Japan", 8000000), city(12, "Japan", 2000000)));
+    }
+
+    static City city(int geonameId, String countryName, int population) {
+        return new City(geonameId, "City " + geonameId, "XX", countryName, population, "UTC", "0,0");
+    }
+
+    @Test
+    void testGetPopulationOfCountry() throws Exception {
+        assertEquals(220000, server.getPopulationOfCountry("Belgium", 1).getResult(),
+            "The population count for Belgium should be accurate.");
+    }
+
+    @Test
+    void testGetNumberOfCities() throws Exception {
+        assertEquals(2, server.getNumberOfCities("Belgium", 10000, 1).getResult(),
+            "The number of cities in Belgium with population over 10000 should be accurate.");
+    }
+
+    @Test
+    void testGetNumberOfCountriesWithMinCityCountAndPopulation() throws Exception {
+        // Chile and Japan have 2 cities with at least 5000000
+        assertEquals(2, server.getNumberOfCountries(2, 5000000, 1).getResult(),
+            "The number of countries with at least 2 cities having populations over 5000000 should be accurate.");
+    }
+
+    @Test
+    void testGetNumberOfCountriesWithCityCountRange() throws Exception {
+        // Only Norway has 3 cities between 100000 and 800000
+        assertEquals(1, server.getNumberOfCountries(3, 100000, 800000, 1).getResult(),
+            "The number of countries with 3 cities having populations between 100000 and 800000 should be accurate.");
+    }
+
+    @Test
+    void testCacheHitSkipsWaitingList() throws Exception {
+        Response miss = server.getPopulationOfCountry("Norway", 1);
+        Response hit = server.getPopulationOfCountry("Norway", 1);
+
+        assertEquals(1120000, hit.getResult());
+        assertEquals(miss.getResult(), hit.getResult());
+        assertEquals(0, hit.getWaitingTime(), "A cache hit should not wait in the waiting list");
+        assertEquals(1, getMetric(server, "server_requests_enqueued_total"),
+            "Only the cache miss should be put into the waiting list");
+        assertEquals(1, getMetric(server, "server_cache_hits_total"));
+    }
+
+    @Test
+    void testUpdateInvalidatesOnlyUpdatedCountries() throws Exception {
+        server.getPopulationOfCountry("Norway", 1);
+        server.getPopulationOfCountry("Chile", 1);
+
+        assertEquals(1, server.updateCities(List.of(CityUpdate.updatePopulation(4, "Norway", 800000))));
+
+        assertEquals(1220000, server.getPopulationOfCountry("Norway", 1).getResult(),
+            "The cached result of the updated country should not be served");
+        assertEquals(11590000, server.getPopulationOfCountry("Chile", 1).getResult());
+        assertEquals(1, getMetric(server, "server_cache_invalidations_total"));
+        assertEquals(1, getMetric(server, "server_cache_hits_total"), "Only the result of the other country should still be cached");
+    }
+
+    @Test
+    void testInvalidRequestIsRejectedBeforeWaitingList() throws Exception {
+        assertThrows(RemoteException.class, () -> server.executeRequest("getNumberOfCities", new Object[] {"Norway"}, 1, 7));
+        assertThrows(RemoteException.class, () -> server.executeRequest("getNumberOfCountries", new Object[] {"2", 5000000}, 1, 8));
+        assertThrows(RemoteException.class, () -> server.executeRequest("deleteCities", new Object[] {}, 1, 9));
+
+        assertEquals(1120000, server.executeRequest("getPopulationOfCountry", new Object[] {"Norway"}, 1, 10).getResult());
+        assertEquals(1, getMetric(server, "server_requests_enqueued_total"), "Only the valid request should be put into the waiting list");
+    }
+
+    @Test
+    void testFailingRequestDoesNotStopWorker() throws Exception {
+        // A missing country name fails when its result is cached, after the request was taken by the worker
+        assertThrows(RemoteException.class, () -> server.getPopulationOfCountry(null, 1));
+
+        assertEquals(220000, server.getPopulationOfCountry("Belgium", 1).getResult());
+        assertEquals(0, server.getQueueLength());
+    }
+
+    @Test
+    void testShutdownUnbindsServer() throws Exception {
+        Registry registry = LocateRegistry.createRegistry(0);
+        try {
+            registry.bind(ServerNames.bindingName(1, 1), server);
+            server.setRegistry(registry);
+
+            server.shutdown();
+
+            assertFalse(Arrays.asList(registry.list()).contains(ServerNames.bindingName(1, 1)),
+                "A restarted server should be able to bind the name again");
+        } finally {
+            UnicastRemoteObject.unexportObject(registry, true);
+        }
+    }
+
+    /**
+     * Returns the value of a metric of a server, read from its metrics in the Prometheus text format
+     */
+    static long getMetric(Server server, String name) throws Exception {
+        for (String line : server.getMetrics().split("\n")) {
+            if (line.startsWith(name + "{")) {
+                return (long) Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+            }
+        }
+        throw new AssertionError("Metric " + name + " not found");
+    }
 }
@@ -0,0 +1,95 @@
+package com.ass1.trace;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TraceTest {
+    @TempDir
+    Path directory;
+
+    private static TraceRecord request(long timestamp, long requestId, Object... args) {
+        return new TraceRecord(TraceRecord.Type.REQUEST, timestamp, 2, requestId, "Server zone 1", "getNumberOfCities", args, 15, 90);
+    }
+
+    private String writeTrace(TraceRecord... records) throws IOException {
+        String traceFile = directory.resolve("test.trace").toString();
+        try (TraceWriter writer = new TraceWriter(traceFile)) {
+            for (TraceRecord record : records) {
+                writer.write(record);
+            }
+        }
+        return traceFile;
+    }
+
+    @Test
+    void testRoundTrip() throws Exception {
+        String traceFile = writeTrace(
+            request(1000, 42, "Korea, Republic of", 50000),
+            new TraceRecord(TraceRecord.Type.ROUTE, 1001, 3, -1, "Server zone 4.2", "route", new Object[] {}, 0, 0));
+
+        List<TraceRecord> records = TraceReader.readAll(traceFile);
+
+        assertEquals(2, records.size());
+        TraceRecord request = records.get(0);
+        assertEquals(TraceRecord.Type.REQUEST, request.getType());
+        assertEquals(1000, request.getTimestamp());
+        assertEquals(2, request.getClientZone());
+        assertEquals(42, request.getRequestId());
+        assertEquals("Server zone 1", request.getServerName());
+        assertEquals("getNumberOfCities", request.getMethod());
+        assertArrayEquals(new Object[] {"Korea, Republic of", 50000}, request.getArgs(), "Arguments should keep their types");
+        assertEquals(15, request.getWaitingTime());
+        assertEquals(90, request.getExecutionTime());
+
+        TraceRecord route = records.get(1);
+        assertEquals(TraceRecord.Type.ROUTE, route.getType());
+        assertEquals(-1, route.getRequestId());
+        assertEquals("Server zone 4.2", route.getServerName());
+        assertEquals(0, route.getArgs().length);
+    }
+
+    @Test
+    void testRecordCutOffAtTheEndIsSkipped() throws Exception {
+        String traceFile = writeTrace(request(1000, 1, "Norway", 10000), request(2000, 2, "Chile", 10000), request(3000, 3, "Japan", 10000));
+
+        try (RandomAccessFile file = new RandomAccessFile(traceFile, "rw")) {
+            file.setLength(file.length() - 5);
+        }
+        List<TraceRecord> records = TraceReader.readAll(traceFile);
+
+        assertEquals(2, records.size(), "Reading should stop at the last complete record");
+        assertEquals(2, records.get(1).getRequestId());
+        assertEquals("Chile", records.get(1).getArgs()[0]);
+    }
+
+    @Test
+    void testCorruptRecordTypeIsReported() throws Exception {
+        String traceFile = writeTrace(request(1000, 1, "Norway", 10000));
+
+        // The type of the first record is right after the magic number and the version
+        try (RandomAccessFile file = new RandomAccessFile(traceFile, "rw")) {
+            file.seek(6);
+            file.writeByte(TraceRecord.Type.values().length);
+        }
+
+        assertThrows(IOException.class, () -> TraceReader.readAll(traceFile));
+    }
+
+    @Test
+    void testRejectsOtherFiles() throws Exception {
+        Path otherFile = directory.resolve("input.txt");
+        Files.writeString(otherFile, "getPopulationofCountry Norway Zone:1\n");
+
+        assertThrows(IOException.class, () -> TraceReader.readAll(otherFile.toString()));
+    }
+}